@@ -0,0 +1,164 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@code ListDirectoryBenchmark} compares listing a directory of 10,000 entries with one attribute
+ * lookup per entry, as {@link LocalStorage#listDirectory(String, String)} does, against the
+ * separate {@code isDirectory}, {@code length} and {@code lastModified} lookups that it replaced.
+ * Run it with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ListDirectoryBenchmark {
+
+  private static final String REPOSITORY = "releases";
+  private static final String PATH = "com/example/artifact";
+  private static final int ENTRIES = 10_000;
+
+  private Path root;
+  private Path directory;
+  private LocalStorage storage;
+
+  /**
+   * Creates the synthetic directory. Every tenth entry is a version directory and the others are
+   * small files.
+   *
+   * @throws IOException if the directory could not be created.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("list-benchmark");
+    directory = Files.createDirectories(root.resolve(REPOSITORY).resolve(PATH));
+
+    for (int i = 0; i < ENTRIES; i++) {
+      if (i % 10 == 0) {
+        Files.createDirectory(directory.resolve("1.0." + i));
+      } else {
+        Files.write(directory.resolve("artifact-1.0." + i + ".jar"), new byte[i % 1024]);
+      }
+    }
+
+    storage = new LocalStorage(root, Set.of(REPOSITORY));
+  }
+
+  /**
+   * Deletes the synthetic directory.
+   *
+   * @throws IOException if the directory could not be deleted.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    storage.close();
+    Files.walkFileTree(root, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Lists the directory with one attribute lookup per entry.
+   *
+   * @return the entries.
+   * @throws IOException if the directory could not be listed.
+   */
+  @Benchmark
+  public List<StorageFile> attributeLookup() throws IOException {
+    return storage.listDirectory(REPOSITORY, PATH);
+  }
+
+  /**
+   * Lists the directory with separate lookups for the type, size and modification time of each
+   * entry. The stream is closed here, unlike in the original code, so that the benchmark does not
+   * run out of file handles.
+   *
+   * @return the entries.
+   * @throws IOException if the directory could not be listed.
+   */
+  @Benchmark
+  public List<StorageFile> separateLookups() throws IOException {
+    try (Stream<Path> stream = Files.list(directory)) {
+      return stream
+          .filter(file -> !file.getFileName().toString().startsWith(LocalStorage.TEMP_PREFIX))
+          .map(this::createStorageFile)
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Creates a {@link StorageFile} instance for a file path the way that {@link LocalStorage} did
+   * before it read all attributes at once.
+   *
+   * @param path the file path.
+   * @return the storage file.
+   */
+  private StorageFile createStorageFile(Path path) {
+    File file = path.toFile();
+    StorageFile storageFile = new StorageFile();
+    storageFile.setDirectory(Files.isDirectory(path));
+    storageFile.setRepository(REPOSITORY);
+    storageFile.setPath(PATH + "/" + path.getFileName());
+    storageFile.setSize(storageFile.isDirectory() ? 0L : file.length());
+    storageFile.setCreated(LocalDateTime.ofInstant(
+        Instant.ofEpochMilli(file.lastModified()), ZoneOffset.systemDefault()));
+    return storageFile;
+  }
+}
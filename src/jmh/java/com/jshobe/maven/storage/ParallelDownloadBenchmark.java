@@ -0,0 +1,215 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * {@code ParallelDownloadBenchmark} measures the time taken to download a 64 MiB object from a
+ * simulated S3 connection, which waits for a fixed latency before the first byte of each request
+ * and then delivers at most 50 MiB/s per connection. A parallelism of one reads the object with a
+ * single request, as {@link S3Storage} does below the download threshold, and higher values read
+ * it through {@link ParallelRangeInputStream}. Run it with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParallelDownloadBenchmark {
+
+  private static final long LENGTH = 64L * 1024L * 1024L;
+  private static final int PART_SIZE = 8 * 1024 * 1024;
+  private static final int BUFFERS = 16;
+  private static final long BANDWIDTH = 50L * 1024L * 1024L;
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  @Param({"20", "80"})
+  private long latencyMillis;
+
+  @Param({"1", "4", "8"})
+  private int parallelism;
+
+  private BufferPool buffers;
+  private ExecutorService executor;
+
+  /**
+   * Creates the buffer pool and the executor on which the parts are fetched.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    buffers = new BufferPool(PART_SIZE, BUFFERS);
+    executor = Executors.newFixedThreadPool(parallelism);
+  }
+
+  /**
+   * Stops the executor.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Downloads the whole object.
+   *
+   * @return the number of bytes read.
+   * @throws IOException if the object could not be read.
+   */
+  @Benchmark
+  public long download() throws IOException {
+    ResponseInputStream<GetObjectResponse> response = new ResponseInputStream<>(
+        GetObjectResponse.builder().contentLength(LENGTH).build(),
+        AbortableInputStream.create(new RemoteInputStream(0L, LENGTH)));
+    InputStream input = parallelism <= 1 ? response : new ParallelRangeInputStream(
+        response, LENGTH, parallelism, buffers, new RemoteRangeReader(), executor);
+    byte[] buffer = new byte[CHUNK_SIZE];
+    long total = 0L;
+
+    try (input) {
+      int count;
+
+      while ((count = input.read(buffer)) >= 0) {
+        total += count;
+      }
+    }
+
+    return total;
+  }
+
+  /**
+   * {@code RemoteRangeReader} reads ranges of the object from simulated connections.
+   */
+  private final class RemoteRangeReader implements ParallelRangeInputStream.RangeReader {
+
+    @Override
+    public void read(long offset, ByteBuffer buffer) throws IOException {
+      byte[] chunk = new byte[CHUNK_SIZE];
+
+      try (InputStream input = open(offset)) {
+        while (buffer.hasRemaining()) {
+          int count = input.read(chunk, 0, Math.min(chunk.length, buffer.remaining()));
+
+          if (count < 0) {
+            throw new IOException("Unexpected end of file");
+          }
+
+          buffer.put(chunk, 0, count);
+        }
+      }
+    }
+
+    @Override
+    public InputStream open(long offset) {
+      return new RemoteInputStream(offset, LENGTH);
+    }
+  }
+
+  /**
+   * {@code RemoteInputStream} simulates the body of a response from S3. The first read waits for
+   * the request latency, and later reads are paced to the bandwidth of a single connection. The
+   * content of the bytes is not meaningful.
+   */
+  private final class RemoteInputStream extends InputStream {
+
+    private final long offset;
+    private final long end;
+    private long position;
+    private long started;
+
+    /**
+     * Creates a new instance of {@code RemoteInputStream}.
+     *
+     * @param offset the offset of the first byte.
+     * @param end    the offset after the last byte.
+     */
+    RemoteInputStream(long offset, long end) {
+      this.offset = offset;
+      this.end = end;
+      this.position = offset;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (started == 0L) {
+        sleep(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        started = System.nanoTime();
+      }
+
+      if (position >= end) {
+        return -1;
+      }
+
+      int count = (int) Math.min(Math.min(len, CHUNK_SIZE), end - position);
+      position += count;
+      long due = started + (position - offset) * TimeUnit.SECONDS.toNanos(1L) / BANDWIDTH;
+      sleep(due - System.nanoTime());
+      return count;
+    }
+
+    /**
+     * Waits for a simulated delay.
+     *
+     * @param nanos the delay in nanoseconds.
+     * @throws InterruptedIOException if the thread is interrupted.
+     */
+    private void sleep(long nanos) throws InterruptedIOException {
+      if (nanos <= 0L) {
+        return;
+      }
+
+      try {
+        TimeUnit.NANOSECONDS.sleep(nanos);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading");
+      }
+    }
+  }
+}
@@ -20,27 +20,56 @@ package com.jshobe.maven;
 
 import at.favre.lib.crypto.bcrypt.BCrypt;
 import com.jshobe.maven.config.MavenConfiguration;
+import com.jshobe.maven.handler.CompressionCache;
 import com.jshobe.maven.handler.MavenHandler;
 import com.jshobe.maven.security.MavenIdentityManager;
 import com.jshobe.maven.storage.CachedStorage;
+import com.jshobe.maven.storage.ChecksumStorage;
+import com.jshobe.maven.storage.DiskCacheStorage;
 import com.jshobe.maven.storage.LocalStorage;
+import com.jshobe.maven.storage.LockingStorage;
 import com.jshobe.maven.storage.ProxyStorage;
+import com.jshobe.maven.storage.S3AsyncStorage;
 import com.jshobe.maven.storage.S3Storage;
 import com.jshobe.maven.storage.Storage;
+import com.jshobe.maven.storage.StripedStorage;
 import com.jshobe.maven.storage.cache.Cache;
 import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
 import io.undertow.security.idm.IdentityManager;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.configuration2.Configuration;
+import org.xnio.Options;
+import org.xnio.XnioWorker;
+import org.xnio.management.XnioWorkerMXBean;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3BaseClientBuilder;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
 
 /**
  * {@code MavenServer} servers a Maven repository.
@@ -50,6 +79,8 @@ public class MavenServer {
 
   private final Configuration config;
   private final Cache cache;
+  private final ExecutorService executor;
+  private final Storage storage;
   private final Undertow server;
 
   /**
@@ -62,10 +93,17 @@ public class MavenServer {
   public MavenServer(boolean rebuildIndex) throws Exception {
     this.config = new MavenConfiguration();
     this.cache = createCache(rebuildIndex);
-    this.server = Undertow.builder()
+    this.executor = createExecutor();
+    this.storage = createStorage();
+    Undertow.Builder builder = Undertow.builder()
         .addHttpListener(getPort(), "0.0.0.0")
-        .setHandler(new MavenHandler(createStorage(), createIdentityManager()))
-        .build();
+        .setHandler(
+            new MavenHandler(storage, createIdentityManager(), isAsync(), executor,
+                createCompressionCache()));
+    configureTuning(builder);
+    configureHttp2(builder);
+    configureHttps(builder);
+    this.server = builder.build();
   }
 
   /**
@@ -80,9 +118,36 @@ public class MavenServer {
    */
   public void stop() {
     server.stop();
+
+    if (executor != null) {
+      executor.shutdown();
+    }
+
+    try {
+      storage.close();
+    } catch (IOException e) {
+      log.warn("Failed to close storage", e);
+    }
+
     cache.close();
   }
 
+  /**
+   * Gets the management interface of the I/O and worker threads of the running server.
+   *
+   * @return the worker management interface.
+   * @throws IllegalStateException if the server is not running.
+   */
+  public XnioWorkerMXBean getWorkerStatus() {
+    XnioWorker worker = server.getWorker();
+
+    if (worker == null) {
+      throw new IllegalStateException("The server is not running");
+    }
+
+    return worker.getMXBean();
+  }
+
   /**
    * Creates the cache.
    *
@@ -111,17 +176,57 @@ public class MavenServer {
     }
 
     if (config.getBoolean("maven.storage.s3.enabled") &&
+        config.containsKey("maven.storage.s3.bucket") &&
+        config.getBoolean("maven.storage.s3.async", false)) {
+      storage = new S3AsyncStorage(
+          createS3AsyncClient(), config.getString("maven.storage.s3.bucket"), repositories);
+    } else if (config.getBoolean("maven.storage.s3.enabled") &&
         config.containsKey("maven.storage.s3.bucket")) {
-      storage = new S3Storage(config.getString("maven.storage.bucket"), repositories);
+      storage = new S3Storage(createS3Client(), config.getString("maven.storage.s3.bucket"),
+          repositories, config.getInt("maven.storage.s3.multipart.partsize", 8 * 1024 * 1024),
+          config.getInt("maven.storage.s3.multipart.parallelism", 4),
+          config.getInt("maven.storage.s3.multipart.buffers", 16),
+          config.getLong("maven.storage.s3.download.threshold", 32L * 1024L * 1024L),
+          config.getInt("maven.storage.s3.download.partsize", 8 * 1024 * 1024),
+          config.getInt("maven.storage.s3.download.parallelism", 4),
+          config.getInt("maven.storage.s3.download.buffers", 16));
+    }
+
+    if (storage != null && config.containsKey("maven.storage.disk.directory")) {
+      storage = new DiskCacheStorage(storage,
+          Paths.get(config.getString("maven.storage.disk.directory")),
+          config.getLong("maven.storage.disk.capacity", 10L * 1024L * 1024L * 1024L),
+          Duration.ofSeconds(config.getLong("maven.storage.disk.revalidate", 60L)));
+    }
+
+    LocalStorage.Durability durability = LocalStorage.Durability.valueOf(
+        config.getString("maven.storage.durability", "none").toUpperCase(Locale.ROOT));
+    boolean watch = config.getBoolean("maven.storage.watch", false);
+    boolean dedup = config.getBoolean("maven.storage.dedup", false);
+
+    if (storage == null && config.containsKey("maven.storage.volumes")) {
+      List<Path> volumes = config.getList(String.class, "maven.storage.volumes").stream()
+          .map(Paths::get)
+          .collect(Collectors.toList());
+      storage = new StripedStorage(volumes, repositories, durability, watch, dedup);
     }
 
     if (storage == null) {
       Path path = Paths.get(config.getString("maven.storage.directory"));
       Files.createDirectories(path);
-      storage = new LocalStorage(path, repositories);
+      storage = new LocalStorage(path, repositories, durability, watch, dedup);
+    }
+
+    storage = new CachedStorage(storage, cache,
+        Duration.ofSeconds(config.getLong("maven.storage.ttl", 3600L)),
+        config.getLong("maven.storage.content.capacity", 64L * 1024L * 1024L),
+        config.getLong("maven.storage.content.threshold", 64L * 1024L));
+
+    if (config.getBoolean("maven.storage.checksums", true)) {
+      storage = new ChecksumStorage(storage, cache);
     }
 
-    storage = new CachedStorage(storage, cache);
+    storage = new LockingStorage(storage);
 
     if (config.containsKey("maven.proxies.name")) {
       Map<String, Set<String>> proxies = new HashMap<>();
@@ -142,6 +247,75 @@ public class MavenServer {
     return storage;
   }
 
+  /**
+   * Creates the S3 client that is shared by all storage requests. The client keeps a pool of
+   * connections to S3, so that requests do not each open a new connection and repeat the TLS
+   * handshake and credential resolution.
+   *
+   * @return a new S3 client.
+   */
+  private S3Client createS3Client() {
+    ApacheHttpClient.Builder http = ApacheHttpClient.builder()
+        .maxConnections(config.getInt("maven.storage.s3.connections", 50))
+        .tcpKeepAlive(config.getBoolean("maven.storage.s3.keepalive", true))
+        .connectionTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.connect", 2000L)))
+        .socketTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.socket", 30000L)))
+        .connectionAcquisitionTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.acquire", 10000L)))
+        .connectionMaxIdleTime(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.idle", 60000L)));
+    return configureS3(S3Client.builder().httpClientBuilder(http)).build();
+  }
+
+  /**
+   * Creates the non-blocking S3 client that is shared by all storage requests. The client uses a
+   * small number of event loop threads for all of its connections, so requests in progress do not
+   * hold a thread.
+   *
+   * @return a new S3 client.
+   */
+  private S3AsyncClient createS3AsyncClient() {
+    NettyNioAsyncHttpClient.Builder http = NettyNioAsyncHttpClient.builder()
+        .maxConcurrency(config.getInt("maven.storage.s3.connections", 50))
+        .tcpKeepAlive(config.getBoolean("maven.storage.s3.keepalive", true))
+        .connectionTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.connect", 2000L)))
+        .readTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.socket", 30000L)))
+        .writeTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.socket", 30000L)))
+        .connectionAcquisitionTimeout(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.acquire", 10000L)))
+        .connectionMaxIdleTime(
+            Duration.ofMillis(config.getLong("maven.storage.s3.timeouts.idle", 60000L)));
+    return configureS3(S3AsyncClient.builder().httpClientBuilder(http)).build();
+  }
+
+  /**
+   * Applies the endpoint, region and addressing settings to an S3 client builder.
+   *
+   * @param builder the client builder.
+   * @param <B>     the type of the client builder.
+   * @return the client builder.
+   */
+  private <B extends S3BaseClientBuilder<B, ?>> B configureS3(B builder) {
+    builder.serviceConfiguration(S3Configuration.builder()
+        .pathStyleAccessEnabled(config.getBoolean("maven.storage.s3.pathstyle", false))
+        .build());
+
+    if (config.containsKey("maven.storage.s3.endpoint")) {
+      builder.endpointOverride(URI.create(config.getString("maven.storage.s3.endpoint")));
+    }
+
+    if (config.containsKey("maven.storage.s3.region")) {
+      builder.region(Region.of(config.getString("maven.storage.s3.region")));
+    }
+
+    return builder;
+  }
+
   /**
    * Gets the HTTP port number.
    *
@@ -151,6 +325,163 @@ public class MavenServer {
     return config.getInt("maven.port");
   }
 
+  /**
+   * Applies the thread pool, buffer pool, backlog, timeout and request limit settings. Settings
+   * that have not been configured are left at the HTTP server defaults, which are derived from the
+   * number of available processors.
+   *
+   * @param builder the server builder.
+   */
+  private void configureTuning(Undertow.Builder builder) {
+    if (config.containsKey("maven.server.threads.io")) {
+      builder.setIoThreads(config.getInt("maven.server.threads.io"));
+    }
+
+    if (config.containsKey("maven.server.threads.worker")) {
+      builder.setWorkerThreads(config.getInt("maven.server.threads.worker"));
+    }
+
+    if (config.containsKey("maven.server.buffers.size")) {
+      builder.setBufferSize(config.getInt("maven.server.buffers.size"));
+    }
+
+    if (config.containsKey("maven.server.buffers.direct")) {
+      builder.setDirectBuffers(config.getBoolean("maven.server.buffers.direct"));
+    }
+
+    if (config.containsKey("maven.server.backlog")) {
+      builder.setSocketOption(Options.BACKLOG, config.getInt("maven.server.backlog"));
+    }
+
+    if (config.containsKey("maven.server.timeouts.idle")) {
+      builder.setServerOption(
+          UndertowOptions.IDLE_TIMEOUT, config.getInt("maven.server.timeouts.idle"));
+      builder.setServerOption(
+          UndertowOptions.NO_REQUEST_TIMEOUT, config.getInt("maven.server.timeouts.idle"));
+    }
+
+    if (config.containsKey("maven.server.timeouts.parse")) {
+      builder.setServerOption(
+          UndertowOptions.REQUEST_PARSE_TIMEOUT, config.getInt("maven.server.timeouts.parse"));
+    }
+
+    if (config.containsKey("maven.server.limits.entity")) {
+      builder.setServerOption(
+          UndertowOptions.MAX_ENTITY_SIZE, config.getLong("maven.server.limits.entity"));
+    }
+  }
+
+  /**
+   * Configures HTTP/2 support. When enabled, HTTP/2 is negotiated using ALPN on the HTTPS
+   * listener, and cleartext HTTP/2 is accepted on the HTTP listener using either an upgrade or
+   * prior knowledge.
+   *
+   * @param builder the server builder.
+   */
+  private void configureHttp2(Undertow.Builder builder) {
+    if (!config.getBoolean("maven.server.http2.enabled", false)) {
+      return;
+    }
+
+    builder.setServerOption(UndertowOptions.ENABLE_HTTP2, true);
+
+    if (config.containsKey("maven.server.http2.streams")) {
+      builder.setServerOption(UndertowOptions.HTTP2_SETTINGS_MAX_CONCURRENT_STREAMS,
+          config.getInt("maven.server.http2.streams"));
+    }
+
+    if (config.containsKey("maven.server.http2.window")) {
+      builder.setServerOption(UndertowOptions.HTTP2_SETTINGS_INITIAL_WINDOW_SIZE,
+          config.getInt("maven.server.http2.window"));
+    }
+
+    if (config.containsKey("maven.server.http2.frame")) {
+      builder.setServerOption(UndertowOptions.HTTP2_SETTINGS_MAX_FRAME_SIZE,
+          config.getInt("maven.server.http2.frame"));
+    }
+  }
+
+  /**
+   * Adds the HTTPS listener if a key store has been configured.
+   *
+   * @param builder the server builder.
+   * @throws GeneralSecurityException if the SSL context could not be created.
+   * @throws IOException              if the key store could not be read.
+   */
+  private void configureHttps(Undertow.Builder builder)
+      throws GeneralSecurityException, IOException {
+    if (!config.containsKey("maven.server.https.keystore")) {
+      return;
+    }
+
+    char[] password = config.getString("maven.server.https.password", "").toCharArray();
+    KeyStore keyStore = KeyStore.getInstance(config.getString("maven.server.https.type", "PKCS12"));
+
+    try (InputStream input =
+        Files.newInputStream(Paths.get(config.getString("maven.server.https.keystore")))) {
+      keyStore.load(input, password);
+    }
+
+    KeyManagerFactory keyManagerFactory =
+        KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagerFactory.init(keyStore, password);
+
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+    builder.addHttpsListener(config.getInt("maven.server.https.port", 8443), "0.0.0.0", sslContext);
+  }
+
+  /**
+   * Determines if files should be served using non-blocking I/O.
+   *
+   * @return {@code true} to use non-blocking I/O or {@code false} to use blocking I/O.
+   */
+  private boolean isAsync() {
+    return config.getBoolean("maven.server.async", false);
+  }
+
+  /**
+   * Creates the cache of compressed text files.
+   *
+   * @return the compression cache or {@code null} if compression is disabled.
+   */
+  private CompressionCache createCompressionCache() {
+    if (!config.getBoolean("maven.server.compression.enabled", true)) {
+      return null;
+    }
+
+    return new CompressionCache(
+        config.getLong("maven.server.compression.capacity", 32L * 1024L * 1024L));
+  }
+
+  /**
+   * Creates the executor on which blocking work is performed. If the {@code virtual} executor is
+   * configured, each blocking request is run on its own virtual thread. Virtual threads require
+   * Java 21 or later, so the executor is created reflectively and the worker thread pool is used
+   * when running on an earlier version.
+   *
+   * @return the executor or {@code null} to use the worker thread pool.
+   */
+  private ExecutorService createExecutor() {
+    String type = config.getString("maven.server.executor", "worker");
+
+    if ("virtual".equalsIgnoreCase(type)) {
+      try {
+        Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (ExecutorService) method.invoke(null);
+      } catch (NoSuchMethodException e) {
+        log.warn("Virtual threads require Java 21 or later, using the worker thread pool");
+      } catch (Exception e) {
+        log.warn("Failed to create the virtual thread executor, using the worker thread pool", e);
+      }
+    } else if (!"worker".equalsIgnoreCase(type)) {
+      throw new IllegalArgumentException("Invalid executor type: " + type);
+    }
+
+    return null;
+  }
+
   /**
    * Creates the identity manager.
    *
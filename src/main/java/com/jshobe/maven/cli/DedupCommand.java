@@ -0,0 +1,108 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.cli;
+
+import com.jshobe.maven.config.MavenConfiguration;
+import com.jshobe.maven.storage.ContentStore;
+import com.jshobe.maven.storage.ContentStore.MigrationResult;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Callable;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.configuration2.Configuration;
+import picocli.CommandLine;
+
+/**
+ * {@code DedupCommand} is the command line command for converting the storage directory to the
+ * deduplicated layout. Each file in the repositories is replaced by a hard link to a blob named
+ * by its content digest, so identical files share the same disk space. Blobs that are no longer
+ * linked to any file are removed. The command may be run again at any time, and should be run
+ * while the server is stopped.
+ */
+@Slf4j
+@CommandLine.Command(
+    name = "dedup", description = "Deduplicates the files in local storage",
+    mixinStandardHelpOptions = true)
+public class DedupCommand implements Callable<Integer> {
+
+  @Override
+  public Integer call() {
+    try {
+      Configuration config = new MavenConfiguration();
+      List<String> roots;
+
+      if (config.containsKey("maven.storage.volumes")) {
+        roots = config.getList(String.class, "maven.storage.volumes");
+      } else {
+        roots = List.of(config.getString("maven.storage.directory"));
+      }
+
+      for (String directory : roots) {
+        Path root = Paths.get(directory).toAbsolutePath();
+
+        if (!Files.isDirectory(root)) {
+          log.error("The storage directory {} does not exist", root);
+          return 1;
+        }
+
+        deduplicate(root, config.getList(String.class, "maven.repositories"));
+      }
+    } catch (Exception e) {
+      log.error("Failed to deduplicate storage", e);
+      return 2;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Deduplicates the files in a storage directory.
+   *
+   * @param root         the path to the storage directory.
+   * @param repositories the names of the repositories.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void deduplicate(Path root, List<String> repositories) throws IOException {
+    MigrationResult total = new MigrationResult();
+    long freed;
+
+    try (ContentStore store = new ContentStore(root)) {
+      for (String repository : repositories) {
+        Path path = root.resolve(repository);
+
+        if (Files.isDirectory(path)) {
+          MigrationResult result = store.migrate(path);
+          log.info("Deduplicated {} of {} files in {}, saving {} bytes",
+              result.getDeduplicated(), result.getFiles(), repository, result.getBytesSaved());
+          total.setFiles(total.getFiles() + result.getFiles());
+          total.setDeduplicated(total.getDeduplicated() + result.getDeduplicated());
+          total.setBytesSaved(total.getBytesSaved() + result.getBytesSaved());
+        }
+      }
+
+      freed = store.collectGarbage();
+    }
+
+    log.info("Deduplicated {} of {} files in {}, saving {} bytes; removed {} bytes of unused blobs",
+        total.getDeduplicated(), total.getFiles(), root, total.getBytesSaved(), freed);
+  }
+}
@@ -26,7 +26,9 @@ import picocli.CommandLine;
 @CommandLine.Command(
     name = "simple-maven-server", mixinStandardHelpOptions = true,
     version = "simple-maven-server 1.0.0", description = "A simple Maven repository server",
-    subcommands = {StartCommand.class, StopCommand.class, UserCommand.class})
+    subcommands = {
+        StartCommand.class, StopCommand.class, UserCommand.class, DedupCommand.class,
+        RebalanceCommand.class})
 public class Main {
 
   /**
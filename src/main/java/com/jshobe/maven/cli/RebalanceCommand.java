@@ -0,0 +1,71 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.cli;
+
+import com.jshobe.maven.config.MavenConfiguration;
+import com.jshobe.maven.storage.LocalStorage;
+import com.jshobe.maven.storage.StripedStorage;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.configuration2.Configuration;
+import picocli.CommandLine;
+
+/**
+ * {@code RebalanceCommand} is the command line command for moving files between storage volumes
+ * after a volume has been added. It should be run while the server is stopped.
+ */
+@Slf4j
+@CommandLine.Command(
+    name = "rebalance", description = "Moves files to their storage volumes",
+    mixinStandardHelpOptions = true)
+public class RebalanceCommand implements Callable<Integer> {
+
+  @Override
+  public Integer call() {
+    try {
+      Configuration config = new MavenConfiguration();
+
+      if (!config.containsKey("maven.storage.volumes")) {
+        log.error("No storage volumes are configured");
+        return 1;
+      }
+
+      List<Path> volumes = config.getList(String.class, "maven.storage.volumes").stream()
+          .map(Paths::get)
+          .collect(Collectors.toList());
+
+      try (StripedStorage storage = new StripedStorage(volumes,
+          new HashSet<>(config.getList(String.class, "maven.repositories")),
+          LocalStorage.Durability.FILE, false,
+          config.getBoolean("maven.storage.dedup", false))) {
+        log.info("Moved {} files", storage.rebalance());
+      }
+    } catch (Exception e) {
+      log.error("Failed to rebalance storage", e);
+      return 2;
+    }
+
+    return 0;
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.cli;
+
+import com.jshobe.maven.MavenServer;
+
+/**
+ * {@code ServerStatus} is the implementation of {@link ServerStatusMBean}.
+ */
+public class ServerStatus implements ServerStatusMBean {
+
+  private final MavenServer server;
+
+  /**
+   * Creates a new instance of {@code ServerStatus}.
+   *
+   * @param server the Maven repository server being monitored.
+   */
+  public ServerStatus(MavenServer server) {
+    this.server = server;
+  }
+
+  @Override
+  public int getIoThreadCount() {
+    return server.getWorkerStatus().getIoThreadCount();
+  }
+
+  @Override
+  public int getCoreWorkerPoolSize() {
+    return server.getWorkerStatus().getCoreWorkerPoolSize();
+  }
+
+  @Override
+  public int getMaxWorkerPoolSize() {
+    return server.getWorkerStatus().getMaxWorkerPoolSize();
+  }
+
+  @Override
+  public int getWorkerPoolSize() {
+    return server.getWorkerStatus().getWorkerPoolSize();
+  }
+
+  @Override
+  public int getBusyWorkerThreadCount() {
+    return server.getWorkerStatus().getBusyWorkerThreadCount();
+  }
+
+  @Override
+  public int getWorkerQueueSize() {
+    return server.getWorkerStatus().getWorkerQueueSize();
+  }
+}
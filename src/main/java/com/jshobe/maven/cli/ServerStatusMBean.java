@@ -0,0 +1,68 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.cli;
+
+/**
+ * {@code ServerStatusMBean} is the MBean interface that exposes the utilization of the thread
+ * pools of a running server.
+ */
+public interface ServerStatusMBean {
+
+  /**
+   * Gets the number of I/O threads.
+   *
+   * @return the I/O thread count.
+   */
+  int getIoThreadCount();
+
+  /**
+   * Gets the core size of the worker thread pool.
+   *
+   * @return the core worker pool size.
+   */
+  int getCoreWorkerPoolSize();
+
+  /**
+   * Gets the maximum size of the worker thread pool.
+   *
+   * @return the maximum worker pool size.
+   */
+  int getMaxWorkerPoolSize();
+
+  /**
+   * Gets the current size of the worker thread pool.
+   *
+   * @return the worker pool size.
+   */
+  int getWorkerPoolSize();
+
+  /**
+   * Gets the number of worker threads that are running tasks.
+   *
+   * @return the busy worker thread count.
+   */
+  int getBusyWorkerThreadCount();
+
+  /**
+   * Gets the number of tasks waiting for a worker thread.
+   *
+   * @return the worker queue size.
+   */
+  int getWorkerQueueSize();
+}
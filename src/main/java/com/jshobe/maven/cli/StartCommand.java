@@ -79,15 +79,17 @@ public class StartCommand implements Callable<Integer> {
   }
 
   /**
-   * Registers the server control MBean.
+   * Registers the server control and server status MBeans.
    *
    * @param server the Maven repository server.
-   * @throws Exception if the bean could not be registered.
+   * @throws Exception if the beans could not be registered.
    */
   private void registerMBean(MavenServer server) throws Exception {
     MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
     ObjectName name = new ObjectName("com.jshobe.maven:type=ServerControl");
     ServerControl mbean = new ServerControl(server);
     mbs.registerMBean(mbean, name);
+    mbs.registerMBean(
+        new ServerStatus(server), new ObjectName("com.jshobe.maven:type=ServerStatus"));
   }
 }
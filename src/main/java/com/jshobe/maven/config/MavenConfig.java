@@ -39,6 +39,11 @@ public class MavenConfig {
    */
   private int port = 8080;
 
+  /**
+   * The HTTP server configuration.
+   */
+  private ServerConfig server;
+
   /**
    * The list of hosted repository names.
    */
@@ -0,0 +1,45 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * {@code MultipartConfig} contains the S3 multipart upload configuration properties.
+ */
+@Data
+@NoArgsConstructor
+public class MultipartConfig {
+
+  /**
+   * The size in bytes of each part of a multipart upload.
+   */
+  private Integer partsize;
+
+  /**
+   * The maximum number of parts of a file that are uploaded at the same time.
+   */
+  private Integer parallelism;
+
+  /**
+   * The maximum number of part buffers shared by all uploads.
+   */
+  private Integer buffers;
+}
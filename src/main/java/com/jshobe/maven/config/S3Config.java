@@ -37,4 +37,49 @@ public class S3Config {
    * The name of the S3 bucket.
    */
   private String bucket;
+
+  /**
+   * A flag that controls if the non-blocking S3 client is used.
+   */
+  private Boolean async;
+
+  /**
+   * The URI of the S3 endpoint, which overrides the default endpoint for the region.
+   */
+  private String endpoint;
+
+  /**
+   * The AWS region of the S3 bucket.
+   */
+  private String region;
+
+  /**
+   * A flag that controls if path style access is used instead of virtual host style access.
+   */
+  private Boolean pathstyle;
+
+  /**
+   * The maximum number of pooled connections to S3.
+   */
+  private Integer connections;
+
+  /**
+   * A flag that controls if TCP keep-alive is enabled for connections to S3.
+   */
+  private Boolean keepalive;
+
+  /**
+   * The S3 connection timeout configuration.
+   */
+  private S3TimeoutsConfig timeouts;
+
+  /**
+   * The S3 multipart upload configuration.
+   */
+  private MultipartConfig multipart;
+
+  /**
+   * The S3 parallel download configuration.
+   */
+  private DownloadConfig download;
 }
@@ -0,0 +1,81 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * {@code ServerConfig} contains the HTTP server configuration properties.
+ */
+@Data
+@NoArgsConstructor
+public class ServerConfig {
+
+  /**
+   * A flag that controls if files are served using non-blocking I/O.
+   */
+  private Boolean async;
+
+  /**
+   * The type of executor on which blocking work is performed, either {@code worker} or
+   * {@code virtual}.
+   */
+  private String executor;
+
+  /**
+   * The response compression configuration.
+   */
+  private CompressionConfig compression;
+
+  /**
+   * The HTTP/2 configuration.
+   */
+  private Http2Config http2;
+
+  /**
+   * The HTTPS listener configuration.
+   */
+  private HttpsConfig https;
+
+  /**
+   * The thread pool configuration.
+   */
+  private ThreadsConfig threads;
+
+  /**
+   * The buffer pool configuration.
+   */
+  private BuffersConfig buffers;
+
+  /**
+   * The maximum length of the queue of pending connections.
+   */
+  private Integer backlog;
+
+  /**
+   * The timeout configuration.
+   */
+  private TimeoutsConfig timeouts;
+
+  /**
+   * The request limit configuration.
+   */
+  private LimitsConfig limits;
+}
@@ -18,6 +18,7 @@
 
 package com.jshobe.maven.config;
 
+import java.util.List;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -42,4 +43,45 @@ public class StorageConfig {
    * The AWS S3 configuration.
    */
   private S3Config s3;
+
+  /**
+   * The local disk cache configuration for remote storage.
+   */
+  private DiskConfig disk;
+
+  /**
+   * A flag that controls if checksum files are generated when files are written.
+   */
+  private Boolean checksums;
+
+  /**
+   * The policy used to make files written to local storage durable, one of {@code none},
+   * {@code file} or {@code group}.
+   */
+  private String durability;
+
+  /**
+   * The file content cache configuration.
+   */
+  private ContentConfig content;
+
+  /**
+   * A flag that controls if the storage directory is watched for changes made by other processes.
+   */
+  private Boolean watch;
+
+  /**
+   * The time in seconds for which directory and file information is cached.
+   */
+  private Long ttl;
+
+  /**
+   * A flag that controls if identical files are stored once in local storage.
+   */
+  private Boolean dedup;
+
+  /**
+   * The paths to the directories, normally on separate volumes, over which artifacts are spread.
+   */
+  private List<String> volumes;
 }
@@ -0,0 +1,107 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.handler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code CompressionCache} holds the compressed variants of text files so that they are only
+ * compressed once. Each entry is keyed by the file and tagged with the entity tag of the version
+ * of the file that was compressed, so an entry is never used after the file has changed. The
+ * least recently used entries are evicted when the total size of the cache exceeds its capacity.
+ */
+public class CompressionCache {
+
+  private final long capacity;
+  private final Map<String, Entry> entries;
+  private long size;
+
+  /**
+   * Creates a new instance of {@code CompressionCache}.
+   *
+   * @param capacity the maximum total size of the compressed data in bytes.
+   */
+  public CompressionCache(long capacity) {
+    this.capacity = capacity;
+    this.entries = new LinkedHashMap<>(16, 0.75F, true);
+  }
+
+  /**
+   * Gets the compressed variant of a file.
+   *
+   * @param key the key that identifies the file.
+   * @param tag the entity tag of the current version of the file.
+   * @return the compressed data or {@code null} if it is not cached.
+   */
+  public synchronized byte[] get(String key, String tag) {
+    Entry entry = entries.get(key);
+
+    if (entry == null) {
+      return null;
+    }
+
+    if (!entry.tag.equals(tag)) {
+      entries.remove(key);
+      size -= entry.data.length;
+      return null;
+    }
+
+    return entry.data;
+  }
+
+  /**
+   * Adds the compressed variant of a file to the cache.
+   *
+   * @param key  the key that identifies the file.
+   * @param tag  the entity tag of the version of the file that was compressed.
+   * @param data the compressed data.
+   */
+  public synchronized void put(String key, String tag, byte[] data) {
+    if (data.length > capacity) {
+      return;
+    }
+
+    Entry previous = entries.put(key, new Entry(tag, data));
+    size += data.length;
+
+    if (previous != null) {
+      size -= previous.data.length;
+    }
+
+    Iterator<Entry> iterator = entries.values().iterator();
+
+    while (size > capacity && iterator.hasNext()) {
+      size -= iterator.next().data.length;
+      iterator.remove();
+    }
+  }
+
+  private static final class Entry {
+
+    private final String tag;
+    private final byte[] data;
+
+    Entry(String tag, byte[] data) {
+      this.tag = tag;
+      this.data = data;
+    }
+  }
+}
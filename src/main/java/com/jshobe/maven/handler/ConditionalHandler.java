@@ -0,0 +1,118 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.handler;
+
+import com.jshobe.maven.storage.StorageFile;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * {@code ConditionalHandler} adds the {@code ETag} and {@code Last-Modified} validators for a file
+ * to the response and answers conditional requests with {@code 304 Not Modified} when the client
+ * already has the current version of the file.
+ */
+public class ConditionalHandler implements HttpHandler {
+
+  private final HttpHandler next;
+
+  /**
+   * Creates a new instance of {@code ConditionalHandler}.
+   *
+   * @param next the handler that serves the file if it has been modified.
+   */
+  public ConditionalHandler(HttpHandler next) {
+    this.next = next;
+  }
+
+  @Override
+  public void handleRequest(HttpServerExchange exchange) throws Exception {
+    StorageFile file = exchange.getAttachment(Keys.FILE);
+    ETag etag = getETag(file);
+    Date lastModified = getLastModified(file);
+
+    exchange.getResponseHeaders().put(Headers.ETAG, etag.toString());
+
+    if (lastModified != null) {
+      exchange.getResponseHeaders()
+          .put(Headers.LAST_MODIFIED, DateUtils.toDateString(lastModified));
+    }
+
+    boolean modified;
+
+    if (exchange.getRequestHeaders().contains(Headers.IF_NONE_MATCH)) {
+      modified = ETagUtils.handleIfNoneMatch(exchange, etag, true);
+    } else {
+      modified = lastModified == null || DateUtils.handleIfModifiedSince(exchange, lastModified);
+    }
+
+    if (modified) {
+      next.handleRequest(exchange);
+    } else {
+      exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+      exchange.endExchange();
+    }
+  }
+
+  /**
+   * Gets the entity tag for a file. If the SHA-1 digest of the file is known, it is used as a
+   * strong entity tag, followed by the entity tag reported by the storage. Otherwise, a weak entity
+   * tag is created from the size and modification time.
+   *
+   * @param file the file.
+   * @return the entity tag.
+   */
+  static ETag getETag(StorageFile file) {
+    if (file.getSha1() != null) {
+      return new ETag(false, file.getSha1());
+    }
+
+    if (file.getEtag() != null) {
+      return new ETag(false, file.getEtag());
+    }
+
+    long time = 0L;
+
+    if (file.getCreated() != null) {
+      time = file.getCreated().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    return new ETag(true, Long.toHexString(file.getSize()) + "-" + Long.toHexString(time));
+  }
+
+  /**
+   * Gets the date and time at which a file was last modified.
+   *
+   * @param file the file.
+   * @return the modification date or {@code null} if it is not known.
+   */
+  static Date getLastModified(StorageFile file) {
+    if (file.getCreated() == null) {
+      return null;
+    }
+
+    return Date.from(file.getCreated().atZone(ZoneId.systemDefault()).toInstant());
+  }
+}
@@ -25,12 +25,11 @@ import com.samskivert.mustache.Template;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.Reader;
-import java.io.Writer;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -40,18 +39,22 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * {@code DirectoryHandler} handles serving directory listings.
+ * {@code DirectoryHandler} handles serving directory listings. The listing is rendered on a worker
+ * thread and sent using the non-blocking response sender.
  */
 @Slf4j
 public class DirectoryHandler implements HttpHandler {
 
   private final Storage storage;
+  private final Executor executor;
   private final Template template;
   private final NumberFormat numberFormat;
   private final DateTimeFormatter dateFormat;
@@ -59,10 +62,13 @@ public class DirectoryHandler implements HttpHandler {
   /**
    * Creates a new instance of {@code DirectoryHandler}.
    *
-   * @param storage the storage provider.
+   * @param storage  the storage provider.
+   * @param executor the executor on which the listing is rendered or {@code null} to use the
+   *                 worker thread pool.
    */
-  public DirectoryHandler(Storage storage) {
+  public DirectoryHandler(Storage storage, Executor executor) {
     this.storage = storage;
+    this.executor = executor;
     this.template = createTemplate();
     this.numberFormat = new DecimalFormat("0");
     this.dateFormat = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
@@ -70,22 +76,37 @@ public class DirectoryHandler implements HttpHandler {
 
   @Override
   public void handleRequest(HttpServerExchange exchange) throws Exception {
+    if (exchange.isInIoThread()) {
+      exchange.dispatch(executor, this);
+      return;
+    }
+
     StorageFile directory = exchange.getAttachment(Keys.FILE);
-    List<Line> lines = storage.listDirectory(directory.getRepository(), directory.getPath())
-        .stream()
-        .sorted(Comparator.comparing(StorageFile::isDirectory).thenComparing(StorageFile::getPath))
-        .map(this::createLine)
-        .collect(Collectors.toList());
+    List<Line> lines;
+
+    try (Stream<StorageFile> files =
+        storage.streamDirectory(directory.getRepository(), directory.getPath())) {
+      lines = files
+          .sorted(Comparator.comparing(StorageFile::isDirectory)
+              .thenComparing(StorageFile::getPath))
+          .map(this::createLine)
+          .collect(Collectors.toList());
+    } catch (IllegalArgumentException e) {
+      exchange.setStatusCode(StatusCodes.NOT_FOUND);
+      exchange.getResponseSender().send("Not found.");
+      return;
+    }
+
     Map<String, Object> data = new HashMap<>();
     data.put("showParent", !directory.getPath().isEmpty());
     data.put("path", directory.getPath().isEmpty() ? "/" : directory.getPath());
     data.put("files", lines);
 
-    exchange.getResponseHeaders().add(Headers.CONTENT_TYPE, "text/html");
+    StringWriter writer = new StringWriter();
+    template.execute(data, writer);
 
-    try (Writer writer = getWriter(exchange)) {
-      template.execute(data, writer);
-    }
+    exchange.getResponseHeaders().add(Headers.CONTENT_TYPE, "text/html");
+    exchange.getResponseSender().send(writer.toString(), StandardCharsets.UTF_8);
   }
 
   /**
@@ -159,17 +180,6 @@ public class DirectoryHandler implements HttpHandler {
         getClass().getResourceAsStream("directory.html"), StandardCharsets.UTF_8));
   }
 
-  /**
-   * Gets the writer for the HTTP response.
-   *
-   * @param exchange the HTTP request/response exchange.
-   * @return the response writer.
-   */
-  private Writer getWriter(HttpServerExchange exchange) {
-    return new PrintWriter(new OutputStreamWriter(
-        exchange.getOutputStream(), StandardCharsets.UTF_8));
-  }
-
   @Data
   @NoArgsConstructor
   private static final class Line {
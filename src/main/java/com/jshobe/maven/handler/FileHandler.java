@@ -20,44 +20,550 @@ package com.jshobe.maven.handler;
 
 import com.jshobe.maven.storage.Storage;
 import com.jshobe.maven.storage.StorageFile;
+import io.undertow.connector.PooledByteBuffer;
+import io.undertow.io.IoCallback;
+import io.undertow.io.Sender;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.ByteRange;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETag;
+import io.undertow.util.HeaderValues;
 import io.undertow.util.Headers;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.zip.GZIPOutputStream;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.xnio.IoUtils;
+import org.xnio.channels.Channels;
+import org.xnio.channels.StreamSinkChannel;
 
 /**
- * {@code FileHandler} handles serving files.
+ * {@code FileHandler} handles serving files. Files that are stored in the local file system are
+ * transferred directly from the I/O thread using a zero-copy transfer. In asynchronous mode, other
+ * files are written to the non-blocking response channel as they are read from storage. Otherwise,
+ * and for all requests for byte ranges, files are copied from storage on a worker thread. Text
+ * files are sent gzip compressed to clients that accept it, and the compressed variants are kept
+ * in a {@link CompressionCache} so that each version of a file is only compressed once.
  */
 public class FileHandler implements HttpHandler {
 
+  private static final int MAX_RANGES = 16;
+  private static final long MIN_COMPRESSED_SIZE = 256L;
+  private static final long MAX_COMPRESSED_SIZE = 4L * 1024L * 1024L;
+  private static final List<String> COMPRESSED_EXTENSIONS = List.of(
+      ".pom", ".xml", ".module", ".json", ".txt", ".md5", ".sha1", ".sha256", ".sha512");
+
   private final Storage storage;
+  private final boolean async;
+  private final Executor executor;
+  private final CompressionCache compressionCache;
 
   /**
    * Creates a new instanceof {@code FileHandler}.
    *
-   * @param storage the storage provider.
+   * @param storage          the storage provider.
+   * @param async            {@code true} to serve files using non-blocking I/O or {@code false}
+   *                         to serve them on a worker thread using blocking I/O.
+   * @param executor         the executor on which files are read from storage or {@code null} to
+   *                         use the worker thread pool.
+   * @param compressionCache the cache of compressed text files or {@code null} to disable
+   *                         compression.
    */
-  public FileHandler(Storage storage) {
+  public FileHandler(Storage storage, boolean async, Executor executor,
+      CompressionCache compressionCache) {
     this.storage = storage;
+    this.async = async;
+    this.executor = executor;
+    this.compressionCache = compressionCache;
   }
 
   @Override
   public void handleRequest(HttpServerExchange exchange) throws Exception {
     StorageFile file = exchange.getAttachment(Keys.FILE);
-    exchange.getResponseHeaders().add(Headers.CONTENT_TYPE, getContentType(file));
-    exchange.getResponseHeaders().add(Headers.CONTENT_LENGTH, file.getSize());
+    exchange.getResponseHeaders().put(Headers.ACCEPT_RANGES, "bytes");
+
+    if (exchange.isInIoThread()) {
+      boolean ranged = exchange.getRequestHeaders().contains(Headers.RANGE);
+      Optional<Path> localPath = Optional.empty();
+
+      if (!ranged && isCompressible(file)) {
+        exchange.getResponseHeaders().put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+
+        if (acceptsGzip(exchange)) {
+          byte[] data = compressionCache.get(
+              getKey(file), ConditionalHandler.getETag(file).getTag());
+
+          if (data == null) {
+            exchange.dispatch(executor, this);
+          } else {
+            sendCompressed(exchange, file, data);
+          }
+
+          return;
+        }
+      }
+
+      if (!ranged) {
+        localPath = storage.getLocalPath(file.getRepository(), file.getPath());
+      }
+
+      if (localPath.isPresent()) {
+        transferFile(exchange, file, localPath.get());
+      } else if (async && !ranged) {
+        publishFile(exchange, file);
+      } else {
+        exchange.dispatch(executor, this);
+      }
+
+      return;
+    }
+
+    exchange.startBlocking();
+    List<Range> ranges = getRanges(exchange, file);
+
+    if (ranges == null && isCompressible(file) && acceptsGzip(exchange)) {
+      sendCompressed(exchange, file, compress(file));
+    } else if (ranges == null) {
+      sendFile(exchange, file);
+    } else if (ranges.isEmpty()) {
+      exchange.setStatusCode(StatusCodes.REQUEST_RANGE_NOT_SATISFIABLE);
+      exchange.getResponseHeaders().put(Headers.CONTENT_RANGE, "bytes */" + file.getSize());
+      exchange.endExchange();
+    } else if (ranges.size() == 1) {
+      sendRange(exchange, file, ranges.get(0));
+    } else {
+      sendRanges(exchange, file, ranges);
+    }
+  }
+
+  /**
+   * Transfers a file from the local file system to the client. The transfer is performed by the
+   * non-blocking response sender, which uses {@code sendfile} where the platform supports it.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @param path     the path to the file in the local file system.
+   * @throws IOException if the file could not be opened.
+   */
+  private void transferFile(HttpServerExchange exchange, StorageFile file, Path path)
+      throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+    try {
+      exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, getContentType(file));
+      exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, channel.size());
+    } catch (IOException e) {
+      IoUtils.safeClose(channel);
+      throw e;
+    }
 
-    try (InputStream input = storage.readFile(file.getRepository(), file.getPath());
+    exchange.getResponseSender().transferFrom(channel, new TransferCallback(channel));
+  }
+
+  /**
+   * Writes a file to the non-blocking response channel as it is read from storage.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @throws IOException if the file could not be opened.
+   */
+  private void publishFile(HttpServerExchange exchange, StorageFile file) throws IOException {
+    Flow.Publisher<ByteBuffer> publisher = storage.readFileAsync(
+        file.getRepository(), file.getPath(),
+        executor == null ? exchange.getConnection().getWorker() : executor);
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, getContentType(file));
+    exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, file.getSize());
+    exchange.dispatch(SameThreadExecutor.INSTANCE,
+        () -> publisher.subscribe(new ResponseSubscriber(exchange)));
+  }
+
+  /**
+   * Sends the entire contents of a file to the client. Files that storage opens as a
+   * {@link FileChannel} are transferred directly to the connection; other channels are read into a
+   * pooled connection buffer and written from it, without copying through the heap.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void sendFile(HttpServerExchange exchange, StorageFile file) throws IOException {
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, getContentType(file));
+    exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, file.getSize());
+    ReadableByteChannel channel = storage.openChannel(file.getRepository(), file.getPath());
+
+    if (channel instanceof FileChannel) {
+      FileChannel fileChannel = (FileChannel) channel;
+      exchange.getResponseSender().transferFrom(fileChannel, new TransferCallback(fileChannel));
+      return;
+    }
+
+    try (channel;
+        PooledByteBuffer pooled = exchange.getConnection().getByteBufferPool().allocate()) {
+      StreamSinkChannel sink = exchange.getResponseChannel();
+      ByteBuffer buffer = pooled.getBuffer();
+
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        Channels.writeBlocking(sink, buffer);
+        buffer.clear();
+      }
+
+      sink.shutdownWrites();
+      Channels.flushBlocking(sink);
+    }
+  }
+
+  /**
+   * Sends the headers of a file without its contents, in response to a HEAD request. The
+   * representation is chosen in the same way as for a GET request, so clients that accept gzip are
+   * sent the headers of the compressed variant of a text file. The file is never read, so if the
+   * compressed variant is not cached, its length is not known and no {@code Content-Length} is
+   * sent.
+   *
+   * @param exchange the HTTP request/response exchange.
+   */
+  void sendHeaders(HttpServerExchange exchange) {
+    StorageFile file = exchange.getAttachment(Keys.FILE);
+    exchange.getResponseHeaders().put(Headers.ACCEPT_RANGES, "bytes");
+
+    if (!exchange.getRequestHeaders().contains(Headers.RANGE) && isCompressible(file)) {
+      exchange.getResponseHeaders().put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+
+      if (acceptsGzip(exchange)) {
+        byte[] data = compressionCache.get(
+            getKey(file), ConditionalHandler.getETag(file).getTag());
+
+        if (data == null) {
+          putCompressedHeaders(exchange, file, -1L);
+        } else {
+          putCompressedHeaders(exchange, file, data.length);
+        }
+
+        exchange.endExchange();
+        return;
+      }
+    }
+
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, getContentType(file));
+    exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, file.getSize());
+    exchange.endExchange();
+  }
+
+  /**
+   * Sends the gzip compressed variant of a file to the client.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @param data     the compressed contents of the file.
+   */
+  private void sendCompressed(HttpServerExchange exchange, StorageFile file, byte[] data) {
+    putCompressedHeaders(exchange, file, data.length);
+    exchange.getResponseSender().send(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Adds the headers of the gzip compressed variant of a file to the response. The compressed
+   * variant is given a weak entity tag since it is not byte-for-byte identical to the file.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @param length   the length of the compressed contents of the file or {@code -1} if it is not
+   *                 known.
+   */
+  private void putCompressedHeaders(HttpServerExchange exchange, StorageFile file, long length) {
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, getContentType(file));
+    exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, "gzip");
+
+    if (length >= 0L) {
+      exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, length);
+    }
+
+    exchange.getResponseHeaders().put(Headers.ETAG,
+        new ETag(true, ConditionalHandler.getETag(file).getTag()).toString());
+  }
+
+  /**
+   * Gets the gzip compressed contents of a file, compressing it if the current version of the
+   * file is not in the cache.
+   *
+   * @param file the file to compress.
+   * @return the compressed contents of the file.
+   * @throws IOException if the file could not be read.
+   */
+  private byte[] compress(StorageFile file) throws IOException {
+    String key = getKey(file);
+    String tag = ConditionalHandler.getETag(file).getTag();
+    byte[] data = compressionCache.get(key, tag);
+
+    if (data == null) {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) file.getSize() / 4 + 64);
+
+      try (InputStream input = storage.readFile(file.getRepository(), file.getPath());
+          OutputStream output = new GZIPOutputStream(buffer)) {
+        copy(input, output);
+      }
+
+      data = buffer.toByteArray();
+      compressionCache.put(key, tag, data);
+    }
+
+    return data;
+  }
+
+  /**
+   * Determines if a file should be compressed. Only text files are compressed, and very small
+   * files are not since the gzip framing would make them larger.
+   *
+   * @param file the file being served.
+   * @return {@code true} if the file should be compressed or {@code false} if not.
+   */
+  private boolean isCompressible(StorageFile file) {
+    if (compressionCache == null || file.getSize() < MIN_COMPRESSED_SIZE ||
+        file.getSize() > MAX_COMPRESSED_SIZE) {
+      return false;
+    }
+
+    String path = file.getPath().toLowerCase(Locale.ROOT);
+    return COMPRESSED_EXTENSIONS.stream().anyMatch(path::endsWith);
+  }
+
+  /**
+   * Determines if the client accepts gzip compressed responses.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @return {@code true} if gzip is acceptable or {@code false} if not.
+   */
+  private static boolean acceptsGzip(HttpServerExchange exchange) {
+    HeaderValues values = exchange.getRequestHeaders().get(Headers.ACCEPT_ENCODING);
+
+    if (values == null) {
+      return false;
+    }
+
+    for (String value : values) {
+      for (String coding : value.split(",")) {
+        String[] params = coding.split(";");
+        String name = params[0].trim();
+
+        if ((name.equalsIgnoreCase("gzip") || name.equals("*")) && !isRejected(params)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Determines if a content coding has been given a quality value of zero.
+   *
+   * @param params the content coding followed by its parameters.
+   * @return {@code true} if the coding is not acceptable or {@code false} if it is.
+   */
+  private static boolean isRejected(String[] params) {
+    for (int i = 1; i < params.length; i++) {
+      String param = params[i].trim();
+
+      if (param.startsWith("q=") || param.startsWith("Q=")) {
+        try {
+          return Double.parseDouble(param.substring(2).trim()) <= 0;
+        } catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Gets the key used to identify a file in the compression cache.
+   *
+   * @param file the file.
+   * @return the cache key.
+   */
+  private static String getKey(StorageFile file) {
+    return file.getRepository() + '/' + file.getPath();
+  }
+
+  /**
+   * Sends a single byte range of a file to the client.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @param range    the byte range.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void sendRange(HttpServerExchange exchange, StorageFile file, Range range)
+      throws IOException {
+    exchange.setStatusCode(StatusCodes.PARTIAL_CONTENT);
+    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, getContentType(file));
+    exchange.getResponseHeaders().put(Headers.CONTENT_RANGE, getContentRange(file, range));
+    exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, range.getLength());
+
+    try (InputStream input = storage.readFile(
+        file.getRepository(), file.getPath(), range.getStart(), range.getLength());
         OutputStream output = exchange.getOutputStream()) {
-      byte[] buffer = new byte[1024];
-      int len;
+      copy(input, output);
+    }
+  }
+
+  /**
+   * Sends multiple byte ranges of a file to the client as a {@code multipart/byteranges} response.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @param ranges   the byte ranges.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void sendRanges(HttpServerExchange exchange, StorageFile file, List<Range> ranges)
+      throws IOException {
+    String boundary = UUID.randomUUID().toString().replace("-", "");
+    String contentType = getContentType(file);
+    List<byte[]> headers = new ArrayList<>();
+    byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    long length = trailer.length;
+
+    for (Range range : ranges) {
+      byte[] header = ("\r\n--" + boundary + "\r\n" +
+          Headers.CONTENT_TYPE_STRING + ": " + contentType + "\r\n" +
+          Headers.CONTENT_RANGE_STRING + ": " + getContentRange(file, range) + "\r\n\r\n")
+          .getBytes(StandardCharsets.US_ASCII);
+      headers.add(header);
+      length += header.length + range.getLength();
+    }
+
+    exchange.setStatusCode(StatusCodes.PARTIAL_CONTENT);
+    exchange.getResponseHeaders()
+        .put(Headers.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+    exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, length);
+
+    try (OutputStream output = exchange.getOutputStream()) {
+      for (int i = 0; i < ranges.size(); i++) {
+        Range range = ranges.get(i);
+        output.write(headers.get(i));
+
+        try (InputStream input = storage.readFile(
+            file.getRepository(), file.getPath(), range.getStart(), range.getLength())) {
+          copy(input, output);
+        }
+      }
+
+      output.write(trailer);
+    }
+  }
+
+  /**
+   * Gets the byte ranges requested by the client.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @return the satisfiable byte ranges, an empty list if none of the requested ranges can be
+   *     satisfied, or {@code null} if the entire file should be sent.
+   */
+  private List<Range> getRanges(HttpServerExchange exchange, StorageFile file) {
+    ByteRange byteRange = ByteRange.parse(exchange.getRequestHeaders().getFirst(Headers.RANGE));
 
-      while ((len = input.read(buffer)) >= 0) {
-        output.write(buffer, 0, len);
+    if (byteRange == null || byteRange.getRanges() > MAX_RANGES ||
+        !isRangeCurrent(exchange, file)) {
+      return null;
+    }
+
+    long size = file.getSize();
+    List<Range> ranges = new ArrayList<>();
+
+    for (int i = 0; i < byteRange.getRanges(); i++) {
+      long start = byteRange.getStart(i);
+      long end = byteRange.getEnd(i);
+
+      if (start < 0) {
+        start = Math.max(0L, size - end);
+        end = size - 1;
+      } else if (end < 0 || end >= size) {
+        end = size - 1;
+      }
+
+      if (start < size && start <= end) {
+        ranges.add(new Range(start, end));
       }
     }
+
+    return ranges;
+  }
+
+  /**
+   * Determines if the validator in the {@code If-Range} header, if any, matches the current version
+   * of the file. Entity tags are compared using the strong comparison function.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param file     the file being served.
+   * @return {@code true} if the requested ranges should be sent or {@code false} if the entire file
+   *     should be sent.
+   */
+  private boolean isRangeCurrent(HttpServerExchange exchange, StorageFile file) {
+    String ifRange = exchange.getRequestHeaders().getFirst(Headers.IF_RANGE);
+
+    if (ifRange == null) {
+      return true;
+    }
+
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      ETag etag = ConditionalHandler.getETag(file);
+      return !etag.isWeak() && ifRange.equals(etag.toString());
+    }
+
+    Date date = DateUtils.parseDate(ifRange);
+    Date lastModified = ConditionalHandler.getLastModified(file);
+    return date != null && lastModified != null &&
+        date.getTime() / 1000L == lastModified.getTime() / 1000L;
+  }
+
+  /**
+   * Gets the value of the {@code Content-Range} header for a byte range.
+   *
+   * @param file  the file being served.
+   * @param range the byte range.
+   * @return the header value.
+   */
+  private String getContentRange(StorageFile file, Range range) {
+    return "bytes " + range.getStart() + "-" + range.getEnd() + "/" + file.getSize();
+  }
+
+  /**
+   * Copies the contents of an input stream to an output stream.
+   *
+   * @param input  the input stream.
+   * @param output the output stream.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void copy(InputStream input, OutputStream output) throws IOException {
+    byte[] buffer = new byte[1024];
+    int len;
+
+    while ((len = input.read(buffer)) >= 0) {
+      output.write(buffer, 0, len);
+    }
   }
 
   /**
@@ -66,8 +572,44 @@ public class FileHandler implements HttpHandler {
    * @param file the file.
    * @return the content MIME type.
    */
-  private String getContentType(StorageFile file) {
+  static String getContentType(StorageFile file) {
     String type = URLConnection.guessContentTypeFromName(file.getPath());
     return type == null ? "application/octet-stream" : type;
   }
+
+  @Data
+  @AllArgsConstructor
+  private static final class Range {
+
+    private long start;
+    private long end;
+
+    long getLength() {
+      return end - start + 1;
+    }
+  }
+
+  /**
+   * {@code TransferCallback} closes the file channel when a file transfer has completed.
+   */
+  private static final class TransferCallback implements IoCallback {
+
+    private final FileChannel channel;
+
+    TransferCallback(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void onComplete(HttpServerExchange exchange, Sender sender) {
+      IoUtils.safeClose(channel);
+      IoCallback.END_EXCHANGE.onComplete(exchange, sender);
+    }
+
+    @Override
+    public void onException(HttpServerExchange exchange, Sender sender, IOException exception) {
+      IoUtils.safeClose(channel);
+      IoCallback.END_EXCHANGE.onException(exchange, sender, exception);
+    }
+  }
 }
@@ -22,32 +22,58 @@ import com.jshobe.maven.storage.Storage;
 import com.jshobe.maven.storage.StorageFile;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import io.undertow.server.handlers.BlockingHandler;
+import io.undertow.server.handlers.encoding.ContentEncodingRepository;
+import io.undertow.server.handlers.encoding.EncodingHandler;
+import io.undertow.server.handlers.encoding.GzipEncodingProvider;
 import io.undertow.util.StatusCodes;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 /**
- * {@code GetHandler} handles GET requests.
+ * {@code GetHandler} handles GET requests. The file is looked up on the I/O thread only if the
+ * storage answers from its cache; otherwise the request is dispatched to the executor first.
  */
 public class GetHandler implements HttpHandler {
 
   private final Storage storage;
+  private final Executor executor;
   private final HttpHandler fileHandler;
   private final HttpHandler directoryHandler;
 
   /**
    * Creates a new instance of {@code GetHandler}.
    *
-   * @param storage the storage provider.
+   * @param storage          the storage provider.
+   * @param async            {@code true} to serve files using non-blocking I/O or {@code false}
+   *                         to serve them on a worker thread using blocking I/O.
+   * @param executor         the executor on which blocking work is performed or {@code null} to
+   *                         use the worker thread pool.
+   * @param compressionCache the cache of compressed text files or {@code null} to disable
+   *                         compression.
    */
-  public GetHandler(Storage storage) {
+  public GetHandler(
+      Storage storage, boolean async, Executor executor, CompressionCache compressionCache) {
     this.storage = storage;
-    fileHandler = new BlockingHandler(new FileHandler(storage));
-    directoryHandler = new BlockingHandler(new DirectoryHandler(storage));
+    this.executor = executor;
+    fileHandler = new ConditionalHandler(
+        new FileHandler(storage, async, executor, compressionCache));
+
+    if (compressionCache == null) {
+      directoryHandler = new DirectoryHandler(storage, executor);
+    } else {
+      directoryHandler = new EncodingHandler(new DirectoryHandler(storage, executor),
+          new ContentEncodingRepository()
+              .addEncodingHandler("gzip", new GzipEncodingProvider(), 50));
+    }
   }
 
   @Override
   public void handleRequest(HttpServerExchange exchange) throws Exception {
+    if (exchange.isInIoThread() && !storage.isMetadataCached()) {
+      exchange.dispatch(executor, this);
+      return;
+    }
+
     String repository = exchange.getAttachment(Keys.REPOSITORY);
     String path = exchange.getAttachment(Keys.PATH);
     Optional<StorageFile> file = storage.getFile(repository, path);
@@ -0,0 +1,84 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.handler;
+
+import com.jshobe.maven.storage.Storage;
+import com.jshobe.maven.storage.StorageFile;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+/**
+ * {@code HeadHandler} handles HEAD requests. The response describes the same representation that a
+ * GET request would receive. It is created entirely from the file metadata, so the file itself is
+ * never opened. The metadata is looked up on the I/O thread only if the storage answers from its
+ * cache.
+ */
+public class HeadHandler implements HttpHandler {
+
+  private final Storage storage;
+  private final Executor executor;
+  private final HttpHandler fileHandler;
+
+  /**
+   * Creates a new instance of {@code HeadHandler}.
+   *
+   * @param storage          the storage provider.
+   * @param executor         the executor on which blocking work is performed or {@code null} to
+   *                         use the worker thread pool.
+   * @param compressionCache the cache of compressed text files or {@code null} to disable
+   *                         compression.
+   */
+  public HeadHandler(Storage storage, Executor executor, CompressionCache compressionCache) {
+    this.storage = storage;
+    this.executor = executor;
+    FileHandler files = new FileHandler(storage, false, executor, compressionCache);
+    fileHandler = new ConditionalHandler(files::sendHeaders);
+  }
+
+  @Override
+  public void handleRequest(HttpServerExchange exchange) throws Exception {
+    if (exchange.isInIoThread() && !storage.isMetadataCached()) {
+      exchange.dispatch(executor, this);
+      return;
+    }
+
+    String repository = exchange.getAttachment(Keys.REPOSITORY);
+    String path = exchange.getAttachment(Keys.PATH);
+    Optional<StorageFile> file = storage.getFile(repository, path);
+
+    if (file.isEmpty()) {
+      exchange.setStatusCode(StatusCodes.NOT_FOUND);
+      exchange.endExchange();
+      return;
+    }
+
+    exchange.putAttachment(Keys.FILE, file.get());
+
+    if (file.get().isDirectory()) {
+      exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/html");
+      exchange.endExchange();
+    } else {
+      fileHandler.handleRequest(exchange);
+    }
+  }
+}
@@ -33,6 +33,7 @@ import io.undertow.util.Headers;
 import io.undertow.util.StatusCodes;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * {@code MavenHandler} is the base HTTP handler for the Maven server.
@@ -40,18 +41,27 @@ import java.util.List;
 public class MavenHandler implements HttpHandler {
 
   private final HttpHandler get;
+  private final HttpHandler head;
   private final HttpHandler put;
 
   /**
    * Creates a new instance of {@code MavenHandler}.
    *
-   * @param storage         the storage provider.
-   * @param identityManager the identity manager for the users that are allowed to write to the
-   *                        repository.
+   * @param storage          the storage provider.
+   * @param identityManager  the identity manager for the users that are allowed to write to the
+   *                         repository.
+   * @param async            {@code true} to serve and receive files using non-blocking I/O or
+   *                         {@code false} to transfer them on a worker thread using blocking I/O.
+   * @param executor         the executor on which blocking work is performed or {@code null} to
+   *                         use the worker thread pool.
+   * @param compressionCache the cache of compressed text files or {@code null} to disable
+   *                         compression.
    */
-  public MavenHandler(Storage storage, IdentityManager identityManager) {
-    get = new GetHandler(storage);
-    put = createPutHandler(storage, identityManager);
+  public MavenHandler(Storage storage, IdentityManager identityManager, boolean async,
+      Executor executor, CompressionCache compressionCache) {
+    get = new GetHandler(storage, async, executor, compressionCache);
+    head = new HeadHandler(storage, executor, compressionCache);
+    put = createPutHandler(storage, identityManager, async, executor);
   }
 
   @Override
@@ -70,11 +80,13 @@ public class MavenHandler implements HttpHandler {
 
     if (exchange.getRequestMethod().equalToString("GET")) {
       get.handleRequest(exchange);
+    } else if (exchange.getRequestMethod().equalToString("HEAD")) {
+      head.handleRequest(exchange);
     } else if (exchange.getRequestMethod().equalToString("PUT")) {
       put.handleRequest(exchange);
     } else {
       exchange.setStatusCode(StatusCodes.METHOD_NOT_ALLOWED);
-      exchange.getResponseHeaders().add(Headers.ALLOW, "GET, PUT");
+      exchange.getResponseHeaders().add(Headers.ALLOW, "GET, HEAD, PUT");
       exchange.getResponseSender().send("Method not allowed.");
     }
   }
@@ -85,10 +97,15 @@ public class MavenHandler implements HttpHandler {
    * @param storage         the storage provider.
    * @param identityManager the identity manager for the users that are allowed to write to the
    *                        repository.
+   * @param async           {@code true} to receive files using non-blocking I/O or {@code false}
+   *                        to receive them on a worker thread using blocking I/O.
+   * @param executor        the executor on which files are written or {@code null} to use the
+   *                        worker thread pool.
    * @return the PUT handler.
    */
-  private HttpHandler createPutHandler(Storage storage, IdentityManager identityManager) {
-    HttpHandler handler = new PutHandler(storage);
+  private HttpHandler createPutHandler(Storage storage, IdentityManager identityManager,
+      boolean async, Executor executor) {
+    HttpHandler handler = new PutHandler(storage, async, executor);
     handler = new AuthenticationCallHandler(handler);
     handler = new AuthenticationConstraintHandler(handler);
     List<AuthenticationMechanism> mechanisms =
@@ -21,26 +21,52 @@ package com.jshobe.maven.handler;
 import com.jshobe.maven.storage.Storage;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
-import java.io.InputStream;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import lombok.extern.slf4j.Slf4j;
+import org.xnio.channels.BlockingReadableByteChannel;
 
 /**
- * {@code PutHandler} handles PUT requests.
+ * {@code PutHandler} handles PUT requests. The request body is passed to storage as a channel, so
+ * that storage can write it without copying it through a stream. In asynchronous mode, the request
+ * body is published to storage as it is read from the non-blocking request channel, so that storage
+ * that writes files asynchronously receives the body without holding a thread.
  */
+@Slf4j
 public class PutHandler implements HttpHandler {
 
   private final Storage storage;
+  private final boolean async;
+  private final Executor executor;
 
   /**
    * Creates a new instance of {@code PutHandler}.
    *
-   * @param storage the storage provider.
+   * @param storage  the storage provider.
+   * @param async    {@code true} to receive files using non-blocking I/O or {@code false} to
+   *                 receive them on a worker thread using blocking I/O.
+   * @param executor the executor on which files are written or {@code null} to use the worker
+   *                 thread pool.
    */
-  public PutHandler(Storage storage) {
+  public PutHandler(Storage storage, boolean async, Executor executor) {
     this.storage = storage;
+    this.async = async;
+    this.executor = executor;
   }
 
   @Override
   public void handleRequest(HttpServerExchange exchange) throws Exception {
+    if (exchange.isInIoThread()) {
+      exchange.dispatch(executor, this::writeFile);
+    } else {
+      this.writeFile(exchange);
+    }
+  }
+
+  private void writeFile(HttpServerExchange exchange) throws Exception {
     String repository = exchange.getAttachment(Keys.REPOSITORY);
     String path = exchange.getAttachment(Keys.PATH);
     String parentPath = getParentPath(path);
@@ -49,22 +75,56 @@ public class PutHandler implements HttpHandler {
       storage.createDirectory(repository, parentPath);
     }
 
-    exchange.startBlocking();
+    if (async) {
+      Executor writeExecutor = executor == null ? exchange.getConnection().getWorker() : executor;
+      exchange.dispatch(SameThreadExecutor.INSTANCE,
+          () -> writeFileAsync(exchange, repository, path, writeExecutor));
+      return;
+    }
 
-    if (exchange.isInIoThread()) {
-      exchange.dispatch(this::writeFile);
-    } else {
-      this.writeFile(exchange);
+    try (ReadableByteChannel channel =
+        new BlockingReadableByteChannel(exchange.getRequestChannel())) {
+      storage.writeFile(repository, path, channel);
     }
   }
 
-  private void writeFile(HttpServerExchange exchange) throws Exception {
-    String repository = exchange.getAttachment(Keys.REPOSITORY);
-    String path = exchange.getAttachment(Keys.PATH);
+  /**
+   * Starts writing the request body to storage as it is received. The exchange is ended when the
+   * write completes.
+   *
+   * @param exchange   the HTTP request/response exchange.
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param executor   the executor used by storage to perform any blocking writes.
+   */
+  private void writeFileAsync(
+      HttpServerExchange exchange, String repository, String path, Executor executor) {
+    try {
+      storage.writeFileAsync(repository, path, exchange.getRequestContentLength(),
+          new RequestPublisher(exchange), executor)
+          .whenComplete((result, error) -> endExchange(exchange, error));
+    } catch (RuntimeException e) {
+      endExchange(exchange, e);
+    }
+  }
+
+  /**
+   * Ends the exchange for an asynchronous write.
+   *
+   * @param exchange the HTTP request/response exchange.
+   * @param error    the exception that caused the write to fail or {@code null} if it succeeded.
+   */
+  private void endExchange(HttpServerExchange exchange, Throwable error) {
+    if (error != null) {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      log.error("Failed to write file", cause);
 
-    try (InputStream input = exchange.getInputStream()) {
-      storage.writeFile(repository, path, input);
+      if (!exchange.isResponseStarted()) {
+        exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+      }
     }
+
+    exchange.endExchange();
   }
 
   private String getParentPath(String path) {
@@ -0,0 +1,166 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.handler;
+
+import io.undertow.server.HttpServerExchange;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.xnio.channels.StreamSourceChannel;
+
+/**
+ * {@code RequestPublisher} publishes the body of a request as it is read from the non-blocking
+ * request channel of an exchange. The channel is only read while the subscriber has outstanding
+ * demand, so a slow storage backend slows the client down instead of buffering the body in memory.
+ * The body can only be subscribed once.
+ */
+class RequestPublisher implements Flow.Publisher<ByteBuffer> {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final HttpServerExchange exchange;
+  private final AtomicBoolean subscribed;
+
+  /**
+   * Creates a new instance of {@code RequestPublisher}.
+   *
+   * @param exchange the HTTP request/response exchange.
+   */
+  RequestPublisher(HttpServerExchange exchange) {
+    this.exchange = exchange;
+    this.subscribed = new AtomicBoolean();
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    StreamSourceChannel channel =
+        subscribed.compareAndSet(false, true) ? exchange.getRequestChannel() : null;
+
+    if (channel == null) {
+      subscriber.onSubscribe(new RequestSubscription(null, subscriber));
+      subscriber.onError(new IllegalStateException("The request body has already been read"));
+      return;
+    }
+
+    RequestSubscription subscription = new RequestSubscription(channel, subscriber);
+    channel.getReadSetter().set(c -> subscription.read());
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * {@code RequestSubscription} reads the request channel on its I/O thread while there is
+   * outstanding demand.
+   */
+  private static final class RequestSubscription implements Flow.Subscription {
+
+    private final StreamSourceChannel channel;
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private ByteBuffer buffer;
+    private long demand;
+    private boolean done;
+
+    /**
+     * Creates a new instance of {@code RequestSubscription}.
+     *
+     * @param channel    the request channel or {@code null} if there is none.
+     * @param subscriber the subscriber.
+     */
+    RequestSubscription(
+        StreamSourceChannel channel, Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.channel = channel;
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (channel == null) {
+        return;
+      }
+
+      channel.getIoThread().execute(() -> {
+        if (done) {
+          return;
+        }
+
+        if (n <= 0L) {
+          done = true;
+          channel.suspendReads();
+          subscriber.onError(new IllegalArgumentException("The demand must be positive"));
+          return;
+        }
+
+        demand = demand + n < 0L ? Long.MAX_VALUE : demand + n;
+        read();
+      });
+    }
+
+    @Override
+    public void cancel() {
+      if (channel == null) {
+        return;
+      }
+
+      channel.getIoThread().execute(() -> {
+        done = true;
+        channel.suspendReads();
+      });
+    }
+
+    /**
+     * Reads from the channel until the demand is met, the channel has no more data available or
+     * the end of the body is reached. This method is only called on the I/O thread of the channel.
+     */
+    void read() {
+      try {
+        while (!done && demand > 0L) {
+          if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+          }
+
+          int count = channel.read(buffer);
+
+          if (count < 0) {
+            done = true;
+            channel.suspendReads();
+            subscriber.onComplete();
+            return;
+          }
+
+          if (count == 0) {
+            channel.resumeReads();
+            return;
+          }
+
+          ByteBuffer data = buffer;
+          buffer = null;
+          data.flip();
+          demand--;
+          subscriber.onNext(data);
+        }
+
+        channel.suspendReads();
+      } catch (IOException e) {
+        done = true;
+        channel.suspendReads();
+        subscriber.onError(e);
+      }
+    }
+  }
+}
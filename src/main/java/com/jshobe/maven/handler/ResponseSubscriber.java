@@ -0,0 +1,146 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.handler;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSinkChannel;
+
+/**
+ * {@code ResponseSubscriber} writes the buffers from a publisher to the non-blocking response
+ * channel of an exchange. Only one buffer is requested at a time, and the next buffer is not
+ * requested until the previous one has been completely written, so a slow client only holds a
+ * single buffer and no thread. The response channel is only opened when the first buffer is
+ * received, so that a publisher that fails before that can still be answered with an error
+ * response instead of a truncated file. The subscription is cancelled if the exchange ends or the
+ * connection is closed before the publisher has finished, so that the file is not held open.
+ */
+@Slf4j
+class ResponseSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+  private final HttpServerExchange exchange;
+  private final AtomicReference<Flow.Subscription> active;
+  private StreamSinkChannel channel;
+  private Flow.Subscription subscription;
+  private volatile ByteBuffer pending;
+
+  /**
+   * Creates a new instance of {@code ResponseSubscriber}.
+   *
+   * @param exchange the HTTP request/response exchange.
+   */
+  ResponseSubscriber(HttpServerExchange exchange) {
+    this.exchange = exchange;
+    this.active = new AtomicReference<>();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    active.set(subscription);
+    // the listeners only hold the reference, which is cleared when the publisher finishes, since
+    // close listeners are kept for the lifetime of the connection
+    AtomicReference<Flow.Subscription> reference = active;
+    exchange.addExchangeCompleteListener((completed, next) -> {
+      cancel(reference);
+      next.proceed();
+    });
+    exchange.getConnection().addCloseListener(connection -> cancel(reference));
+    subscription.request(1L);
+  }
+
+  @Override
+  public void onNext(ByteBuffer buffer) {
+    if (channel == null) {
+      channel = exchange.getResponseChannel();
+      channel.getWriteSetter().set(c -> write());
+    }
+
+    pending = buffer;
+    write();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    active.set(null);
+    log.error("Failed to read file", throwable);
+
+    if (channel != null || exchange.isResponseStarted()) {
+      IoUtils.safeClose(exchange.getConnection());
+    } else {
+      exchange.getResponseHeaders().remove(Headers.CONTENT_LENGTH);
+      exchange.getResponseHeaders().remove(Headers.CONTENT_TYPE);
+      exchange.setStatusCode(StatusCodes.INTERNAL_SERVER_ERROR);
+      exchange.endExchange();
+    }
+  }
+
+  @Override
+  public void onComplete() {
+    active.set(null);
+    exchange.endExchange();
+  }
+
+  /**
+   * Writes the pending buffer to the response channel. If the channel is not able to accept all of
+   * the data, writes are resumed and this method is called again when the channel is writable.
+   */
+  private void write() {
+    ByteBuffer buffer = pending;
+
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.write(buffer) == 0) {
+          channel.resumeWrites();
+          return;
+        }
+      }
+    } catch (IOException e) {
+      log.debug("Failed to write response", e);
+      cancel(active);
+      IoUtils.safeClose(exchange.getConnection());
+      return;
+    }
+
+    channel.suspendWrites();
+    pending = null;
+    subscription.request(1L);
+  }
+
+  /**
+   * Cancels a subscription if the publisher has not finished and it has not already been
+   * cancelled.
+   *
+   * @param reference the reference to the subscription, which is cleared.
+   */
+  private static void cancel(AtomicReference<Flow.Subscription> reference) {
+    Flow.Subscription subscription = reference.getAndSet(null);
+
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@code BufferPool} is a bounded pool of equally sized buffers. Buffers are allocated on demand
+ * until the limit is reached, after which callers wait for a buffer to be released, up to a time
+ * limit, so the memory used by the pool never exceeds the buffer size times the limit.
+ */
+final class BufferPool {
+
+  private final int bufferSize;
+  private final int maxBuffers;
+  private final LinkedBlockingQueue<ByteBuffer> available;
+  private final AtomicInteger allocated;
+
+  /**
+   * Creates a new instance of {@code BufferPool}.
+   *
+   * @param bufferSize the size of each buffer in bytes.
+   * @param maxBuffers the maximum number of buffers.
+   */
+  BufferPool(int bufferSize, int maxBuffers) {
+    this.bufferSize = bufferSize;
+    this.maxBuffers = maxBuffers;
+    this.available = new LinkedBlockingQueue<>();
+    this.allocated = new AtomicInteger();
+  }
+
+  /**
+   * Gets the size of each buffer.
+   *
+   * @return the buffer size in bytes.
+   */
+  int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Acquires a cleared buffer, waiting for one to be released if the pool is exhausted.
+   *
+   * @param timeout the maximum time to wait for a buffer.
+   * @param unit    the unit of the timeout.
+   * @return the buffer.
+   * @throws InterruptedIOException if the thread is interrupted while waiting.
+   * @throws IOException            if no buffer was released before the timeout.
+   */
+  ByteBuffer acquire(long timeout, TimeUnit unit) throws IOException {
+    ByteBuffer buffer = available.poll();
+
+    if (buffer == null) {
+      if (allocated.getAndIncrement() < maxBuffers) {
+        return ByteBuffer.allocate(bufferSize);
+      }
+
+      allocated.decrementAndGet();
+
+      try {
+        buffer = available.poll(timeout, unit);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for a buffer");
+      }
+
+      if (buffer == null) {
+        throw new IOException("Timed out waiting for a buffer");
+      }
+    }
+
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Acquires a cleared buffer without waiting.
+   *
+   * @return the buffer or {@code null} if the pool is exhausted.
+   */
+  ByteBuffer tryAcquire() {
+    ByteBuffer buffer = available.poll();
+
+    if (buffer == null) {
+      if (allocated.getAndIncrement() < maxBuffers) {
+        return ByteBuffer.allocate(bufferSize);
+      }
+
+      allocated.decrementAndGet();
+      return null;
+    }
+
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool.
+   *
+   * @param buffer the buffer.
+   */
+  void release(ByteBuffer buffer) {
+    available.offer(buffer);
+  }
+}
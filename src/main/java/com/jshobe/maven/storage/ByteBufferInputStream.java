@@ -0,0 +1,115 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@code ByteBufferInputStream} is an input stream that reads the remaining content of a buffer.
+ * An action may be run when the stream is closed, such as releasing the buffer, after which the
+ * stream cannot be read.
+ */
+final class ByteBufferInputStream extends InputStream {
+
+  private final ByteBuffer buffer;
+  private final AtomicReference<Runnable> onClose;
+  private volatile boolean closed;
+
+  /**
+   * Creates a new instance of {@code ByteBufferInputStream}.
+   *
+   * @param buffer the buffer to read, which is not shared with other readers.
+   */
+  ByteBufferInputStream(ByteBuffer buffer) {
+    this(buffer, null);
+  }
+
+  /**
+   * Creates a new instance of {@code ByteBufferInputStream} that runs an action when it is first
+   * closed.
+   *
+   * @param buffer  the buffer to read, which is not shared with other readers.
+   * @param onClose the action to run when the stream is closed, or {@code null} if none.
+   */
+  ByteBufferInputStream(ByteBuffer buffer, Runnable onClose) {
+    this.buffer = buffer;
+    this.onClose = new AtomicReference<>(onClose);
+  }
+
+  @Override
+  public int read() throws IOException {
+    ensureOpen();
+    return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!buffer.hasRemaining()) {
+      return -1;
+    }
+
+    int count = Math.min(len, buffer.remaining());
+    buffer.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    ensureOpen();
+    int count = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+    buffer.position(buffer.position() + count);
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    ensureOpen();
+    return buffer.remaining();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    Runnable action = onClose.getAndSet(null);
+
+    if (action != null) {
+      action.run();
+    }
+  }
+
+  /**
+   * Ensures that the stream has not been closed.
+   *
+   * @throws IOException if the stream has been closed.
+   */
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+}
@@ -20,35 +20,86 @@ package com.jshobe.maven.storage;
 
 import com.jshobe.maven.storage.cache.Cache;
 import com.jshobe.maven.storage.cache.CacheMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * {@code CachedStorage} is an implementation of {@link Storage} that wraps another storage instance
- * and caches the results of its query methods.
+ * and caches the results of its query methods. The content of small files may also be cached in
+ * memory outside of the Java heap, so that frequently read files such as POMs, metadata and
+ * checksums are served without reading them from the wrapped storage. Every full read of a small
+ * file counts towards its admission, whether it is read as a stream, a channel or asynchronously,
+ * and small files are never served from a local path so that they are read through the cache.
+ *
+ * <p>Writes are serialized by {@link LockingStorage}, which wraps this storage. Reads never take
+ * locks. Instead, each cached entry records the write stamp of its path from when it started
+ * loading, and an entry that started loading before the last write completed is discarded and
+ * reloaded, so a load that races with a write is never cached past it.
  */
 public class CachedStorage implements Storage {
 
+  private static final int MAX_RELOADS = 3;
+
+  /**
+   * The version of the format of the cached values, which is part of the cache names so that the
+   * caches persisted by a version with a different format are not read.
+   */
+  private static final String CACHE_VERSION = "v2";
+
   private final Storage storage;
-  private final CacheMap<StorageFile[]> directories;
-  private final CacheMap<StorageFile> files;
+  private final CacheMap<Stamped<StorageFile[]>> directories;
+  private final CacheMap<Stamped<StorageFile>> files;
+  private final ContentCache content;
+  private final WriteStamps stamps;
 
   /**
-   * Creates a new instance of {@code CachedStorage}.
+   * Creates a new instance of {@code CachedStorage} that does not cache file content.
    *
    * @param storage the wrapped storage.
    * @param cache   the cache.
    */
   public CachedStorage(Storage storage, Cache cache) {
+    this(storage, cache, Duration.ofHours(1L), 0L, 0L);
+  }
+
+  /**
+   * Creates a new instance of {@code CachedStorage}. Entries are invalidated when files are
+   * written through this instance or when the wrapped storage reports that they have changed, and
+   * otherwise expire after the time to live.
+   *
+   * @param storage          the wrapped storage.
+   * @param cache            the cache.
+   * @param ttl              the time for which directory and file entries are cached.
+   * @param contentCapacity  the maximum total size in bytes of the cached file content, or zero to
+   *                         disable the content cache.
+   * @param contentThreshold the maximum size in bytes of a file whose content may be cached.
+   */
+  public CachedStorage(Storage storage, Cache cache, Duration ttl, long contentCapacity,
+      long contentThreshold) {
     this.storage = storage;
-    directories = cache.createCache(
-        "directories", 100L, 1L, TimeUnit.HOURS, this::fetchDirectoryList);
-    files = cache.createCache(
-        "files", 1000L, 1L, TimeUnit.HOURS, this::fetchFile);
+    this.stamps = new WriteStamps();
+    this.content =
+        contentCapacity > 0L ? new ContentCache(contentCapacity, contentThreshold) : null;
+    directories = cache.createCache("directories." + CACHE_VERSION, 100L, ttl.getSeconds(),
+        TimeUnit.SECONDS, this::fetchDirectoryList);
+    files = cache.createCache("files." + CACHE_VERSION, 1000L, ttl.getSeconds(),
+        TimeUnit.SECONDS, this::fetchFile);
+    storage.addStorageListener(this::invalidate);
   }
 
   @Override
@@ -58,7 +109,7 @@ public class CachedStorage implements Storage {
 
   @Override
   public List<StorageFile> listDirectory(String repository, String path) {
-    StorageFile[] files = directories.get(repository, path);
+    StorageFile[] files = getCurrent(directories, repository, path);
 
     if (files == null) {
       return null;
@@ -67,6 +118,17 @@ public class CachedStorage implements Storage {
     return Arrays.asList(files);
   }
 
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path) {
+    StorageFile[] files = getCurrent(directories, repository, path);
+
+    if (files == null) {
+      throw new IllegalArgumentException("Directory does not exist");
+    }
+
+    return Arrays.stream(files);
+  }
+
   @Override
   public boolean exists(String repository, String path) {
     return getFile(repository, path).isPresent();
@@ -74,43 +136,248 @@ public class CachedStorage implements Storage {
 
   @Override
   public Optional<StorageFile> getFile(String repository, String path) {
-    return Optional.ofNullable(files.get(repository, path));
+    return Optional.ofNullable(getCurrent(files, repository, path));
+  }
+
+  @Override
+  public boolean isMetadataCached() {
+    return true;
   }
 
   @Override
   public InputStream readFile(String repository, String path) throws IOException {
-    return storage.readFile(repository, path);
+    long stamp = stamps.get(repository, path);
+    StorageFile file = getCacheableFile(repository, path);
+
+    if (file == null) {
+      return storage.readFile(repository, path);
+    }
+
+    InputStream cached = content.open(file);
+
+    if (cached != null) {
+      return cached;
+    }
+
+    byte[] bytes;
+
+    try (InputStream input = storage.readFile(repository, path)) {
+      bytes = input.readAllBytes();
+    }
+
+    if (stamps.get(repository, path) == stamp) {
+      content.put(file, bytes);
+    }
+
+    return new ByteArrayInputStream(bytes);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    if (isContentCached(repository, path)) {
+      return Storage.super.readFile(repository, path, offset, length);
+    }
+
+    return storage.readFile(repository, path, offset, length);
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    long stamp = stamps.get(repository, path);
+    StorageFile file = getCacheableFile(repository, path);
+
+    if (file == null) {
+      return storage.readFileAsync(repository, path, executor);
+    }
+
+    if (content.contains(file)) {
+      return Storage.super.readFileAsync(repository, path, executor);
+    }
+
+    return new TeePublisher(
+        storage.readFileAsync(repository, path, executor), new ContentSink(file, stamp));
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    if (getCacheableFile(repository, path) != null) {
+      return Storage.super.openChannel(repository, path);
+    }
+
+    return storage.openChannel(repository, path);
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) throws IOException {
+    if (getCacheableFile(repository, path) != null) {
+      return Optional.empty();
+    }
+
+    return storage.getLocalPath(repository, path);
   }
 
   @Override
   public void writeFile(String repository, String path, InputStream input) throws IOException {
-    storage.writeFile(repository, path, input);
-    directories.invalidate(repository, getParentPath(path));
-    files.invalidate(repository, path);
+    try {
+      storage.writeFile(repository, path, input);
+    } finally {
+      invalidateWrittenFile(repository, path);
+    }
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    try {
+      storage.writeFile(repository, path, channel);
+    } finally {
+      invalidateWrittenFile(repository, path);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    try {
+      return storage.writeFileAsync(repository, path, length, body, executor)
+          .whenComplete((result, error) -> invalidateWrittenFile(repository, path));
+    } catch (RuntimeException e) {
+      invalidateWrittenFile(repository, path);
+      throw e;
+    }
   }
 
   @Override
   public void createDirectory(String repository, String path) throws IOException {
     storage.createDirectory(repository, path);
+    stamps.advance(repository, getParentPath(path));
     directories.invalidate(repository, getParentPath(path));
   }
 
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    storage.addStorageListener(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    storage.close();
+  }
+
+  /**
+   * Invalidates the cached entries for a file that was written through this storage.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   */
+  private void invalidateWrittenFile(String repository, String path) {
+    stamps.advance(repository, getParentPath(path));
+    stamps.advance(repository, path);
+    directories.invalidate(repository, getParentPath(path));
+    files.invalidate(repository, path);
+
+    if (content != null) {
+      content.invalidate(repository, path);
+    }
+  }
+
+  /**
+   * Invalidates the cached entries for a file that was changed outside of this storage.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file or directory.
+   */
+  private void invalidate(String repository, String path) {
+    stamps.advance(repository, path);
+    stamps.advance(repository, getParentPath(path));
+    files.invalidate(repository, path);
+    directories.invalidate(repository, path);
+    directories.invalidate(repository, getParentPath(path));
+
+    if (content != null) {
+      content.invalidate(repository, path);
+    }
+  }
+
+  /**
+   * Gets a file if its content may be held in the content cache.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the file or {@code null} if the content cache is disabled, the file does not exist or
+   *     the file is too large to be cached.
+   */
+  private StorageFile getCacheableFile(String repository, String path) {
+    if (content == null) {
+      return null;
+    }
+
+    StorageFile file = getCurrent(files, repository, path);
+    return file != null && content.accepts(file) ? file : null;
+  }
+
+  /**
+   * Determines if the content of the current version of a file is in the content cache.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return {@code true} if the content is cached or {@code false} if not.
+   */
+  private boolean isContentCached(String repository, String path) {
+    StorageFile file = getCacheableFile(repository, path);
+    return file != null && content.contains(file);
+  }
+
+  /**
+   * Gets a cached value, reloading it if it started loading before the last write to its path.
+   *
+   * @param map        the cache.
+   * @param repository the name of the repository.
+   * @param path       the path.
+   * @param <T>        the type of the value.
+   * @return the value or {@code null} if it does not exist.
+   */
+  private <T extends Serializable> T getCurrent(
+      CacheMap<Stamped<T>> map, String repository, String path) {
+    Stamped<T> entry = map.get(repository, path);
+
+    for (int i = 0; i < MAX_RELOADS && entry != null &&
+        !stamps.isCurrent(repository, path, entry); i++) {
+      map.invalidate(repository, path);
+      entry = map.get(repository, path);
+    }
+
+    return entry == null ? null : entry.getValue();
+  }
+
   /**
    * Gets the directory contents for the cache.
    *
    * @param repository the name of the repository.
    * @param path       the path to the file.
-   * @return the directory contents.
+   * @return the directory contents or {@code null} if the directory does not exist.
    */
-  private StorageFile[] fetchDirectoryList(String repository, String path) {
+  private Stamped<StorageFile[]> fetchDirectoryList(String repository, String path) {
     try {
-      List<StorageFile> files = storage.listDirectory(repository, path);
+      long stamp = stamps.get(repository, path);
+
+      StorageFile[] list;
+
+      try (Stream<StorageFile> files = storage.streamDirectory(repository, path)) {
+        list = files.toArray(StorageFile[]::new);
+      }
 
-      if (files == null) {
+      // an empty listing of a missing prefix is not a directory
+      if (list.length == 0 && path != null && !path.isEmpty() &&
+          !storage.getFile(repository, path).map(StorageFile::isDirectory).orElse(false)) {
         return null;
       }
 
-      return files.toArray(new StorageFile[0]);
+      return new Stamped<>(stamp, list);
+    } catch (IllegalArgumentException e) {
+      return null;
     } catch (IOException e) {
       throw new RuntimeException("Failed to list directory", e);
     }
@@ -123,9 +390,12 @@ public class CachedStorage implements Storage {
    * @param path       the path to the file.
    * @return the file or {@code null} if it does not exist.
    */
-  private StorageFile fetchFile(String repository, String path) {
+  private Stamped<StorageFile> fetchFile(String repository, String path) {
     try {
-      return storage.getFile(repository, path).orElse(null);
+      long stamp = stamps.get(repository, path);
+      return storage.getFile(repository, path)
+          .map(file -> new Stamped<>(stamp, file))
+          .orElse(null);
     } catch (IOException e) {
       throw new RuntimeException("Failed to get file", e);
     }
@@ -146,4 +416,50 @@ public class CachedStorage implements Storage {
 
     return path.substring(0, index);
   }
+
+  /**
+   * {@code ContentSink} collects the content of a small file as it is read asynchronously, and adds
+   * it to the content cache once the whole file has been read.
+   */
+  private final class ContentSink implements TeePublisher.Sink {
+
+    private final StorageFile file;
+    private final long stamp;
+    private final ByteArrayOutputStream data;
+
+    /**
+     * Creates a new instance of {@code ContentSink}.
+     *
+     * @param file  the version of the file that is read.
+     * @param stamp the write stamp of the file from before it was opened.
+     */
+    ContentSink(StorageFile file, long stamp) {
+      this.file = file;
+      this.stamp = stamp;
+      this.data = new ByteArrayOutputStream((int) file.getSize());
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+      if (data.size() + buffer.remaining() > file.getSize()) {
+        throw new IOException("The file is larger than expected");
+      }
+
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      data.write(bytes);
+    }
+
+    @Override
+    public void complete() {
+      if (stamps.get(file.getRepository(), file.getPath()) == stamp) {
+        content.put(file, data.toByteArray());
+      }
+    }
+
+    @Override
+    public void abort() {
+      data.reset();
+    }
+  }
 }
@@ -0,0 +1,449 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import com.jshobe.maven.storage.cache.Cache;
+import com.jshobe.maven.storage.cache.CacheMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code ChecksumStorage} is an implementation of {@link Storage} that wraps another storage
+ * instance and generates the checksum files for each file that is written. The MD5, SHA-1, SHA-256
+ * and SHA-512 digests are calculated in a single pass as the file is streamed to the wrapped
+ * storage, and are written as {@code .md5}, {@code .sha1}, {@code .sha256} and {@code .sha512}
+ * files next to it. Checksum files that are uploaded afterwards with the same value are not
+ * written again, and checksum files are served from the cache instead of being read from storage.
+ * The served checksum is the normalized, lower-case digest, so the size reported for a checksum
+ * file is the size of that digest rather than of the stored file, and the SHA-1 digest of a file is
+ * reported with it when it is known.
+ */
+@Slf4j
+public class ChecksumStorage implements Storage {
+
+  private static final String[][] ALGORITHMS = {
+      {".md5", "MD5"},
+      {".sha1", "SHA-1"},
+      {".sha256", "SHA-256"},
+      {".sha512", "SHA-512"}
+  };
+
+  private final Storage storage;
+  private final CacheMap<Checksums> checksums;
+
+  /**
+   * Creates a new instance of {@code ChecksumStorage}.
+   *
+   * @param storage the wrapped storage.
+   * @param cache   the cache.
+   */
+  public ChecksumStorage(Storage storage, Cache cache) {
+    this.storage = storage;
+    checksums = cache.createCache(
+        "checksums", 1000L, 1L, TimeUnit.HOURS, this::fetchChecksums);
+    storage.addStorageListener(this::invalidate);
+  }
+
+  @Override
+  public List<String> getRepositories() throws IOException {
+    return storage.getRepositories();
+  }
+
+  @Override
+  public List<StorageFile> listDirectory(String repository, String path) throws IOException {
+    return storage.listDirectory(repository, path);
+  }
+
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path)
+      throws IOException {
+    return storage.streamDirectory(repository, path);
+  }
+
+  @Override
+  public boolean exists(String repository, String path) throws IOException {
+    return storage.exists(repository, path);
+  }
+
+  @Override
+  public Optional<StorageFile> getFile(String repository, String path) throws IOException {
+    Optional<StorageFile> file = storage.getFile(repository, path);
+
+    if (file.isEmpty() || file.get().isDirectory()) {
+      return file;
+    }
+
+    String checksum = getChecksum(repository, path);
+
+    if (checksum != null) {
+      return file.map(value -> value.withSize(checksum.length()).withEtag(checksum));
+    }
+
+    if (file.get().getSha1() == null && getChecksumExtension(path) == null) {
+      String sha1 = getChecksum(repository, path + ".sha1");
+
+      if (sha1 != null) {
+        return file.map(value -> value.withSha1(sha1));
+      }
+    }
+
+    return file;
+  }
+
+  @Override
+  public boolean isMetadataCached() {
+    return storage.isMetadataCached();
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path) throws IOException {
+    String checksum = getChecksum(repository, path);
+
+    if (checksum != null) {
+      return new ByteArrayInputStream(checksum.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    return storage.readFile(repository, path);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    if (getChecksum(repository, path) != null) {
+      return Storage.super.readFile(repository, path, offset, length);
+    }
+
+    return storage.readFile(repository, path, offset, length);
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    if (getChecksum(repository, path) != null) {
+      return Storage.super.readFileAsync(repository, path, executor);
+    }
+
+    return storage.readFileAsync(repository, path, executor);
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    if (getChecksum(repository, path) != null) {
+      return Storage.super.openChannel(repository, path);
+    }
+
+    return storage.openChannel(repository, path);
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) throws IOException {
+    if (getChecksum(repository, path) != null) {
+      return Optional.empty();
+    }
+
+    return storage.getLocalPath(repository, path);
+  }
+
+  @Override
+  public void writeFile(String repository, String path, InputStream input) throws IOException {
+    String extension = getChecksumExtension(path);
+
+    if (extension != null) {
+      writeChecksumFile(repository, path, extension, input);
+    } else {
+      writeFile(repository, path, Channels.newChannel(input));
+    }
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    String extension = getChecksumExtension(path);
+
+    if (extension != null) {
+      writeChecksumFile(repository, path, extension, Channels.newInputStream(channel));
+      return;
+    }
+
+    MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+
+    for (int i = 0; i < ALGORITHMS.length; i++) {
+      digests[i] = createDigest(ALGORITHMS[i][1]);
+    }
+
+    storage.writeFile(repository, path, new DigestChannel(channel, digests));
+    writeChecksumFiles(repository, path, digests);
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    if (getChecksumExtension(path) != null) {
+      return Storage.super.writeFileAsync(repository, path, length, body, executor);
+    }
+
+    MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+
+    try {
+      for (int i = 0; i < ALGORITHMS.length; i++) {
+        digests[i] = createDigest(ALGORITHMS[i][1]);
+      }
+    } catch (IOException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+
+    return storage.writeFileAsync(
+        repository, path, length, new DigestPublisher(body, digests), executor)
+        .thenRunAsync(() -> {
+          try {
+            writeChecksumFiles(repository, path, digests);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, executor);
+  }
+
+  @Override
+  public void createDirectory(String repository, String path) throws IOException {
+    storage.createDirectory(repository, path);
+  }
+
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    storage.addStorageListener(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    storage.close();
+  }
+
+  /**
+   * Invalidates the cached checksums of a file that was changed outside of this storage.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file or checksum file.
+   */
+  private void invalidate(String repository, String path) {
+    String extension = getChecksumExtension(path);
+
+    if (extension == null) {
+      checksums.invalidate(repository, path);
+    } else {
+      checksums.invalidate(repository, path.substring(0, path.length() - extension.length()));
+    }
+  }
+
+  /**
+   * Writes the generated checksum files for a file that has been written.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param digests    the digests of the file, in the order of the algorithms.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void writeChecksumFiles(String repository, String path, MessageDigest[] digests)
+      throws IOException {
+    checksums.invalidate(repository, path);
+
+    for (int i = 0; i < ALGORITHMS.length; i++) {
+      byte[] data = toHex(digests[i].digest()).getBytes(StandardCharsets.US_ASCII);
+      storage.writeFile(repository, path + ALGORITHMS[i][0], new ByteArrayInputStream(data));
+    }
+  }
+
+  /**
+   * Writes a checksum file uploaded by a client. If the checksum is the same as the one that was
+   * generated when the file was written, the upload is discarded.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the checksum file.
+   * @param extension  the extension of the checksum file.
+   * @param input      the checksum file content.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void writeChecksumFile(
+      String repository, String path, String extension, InputStream input) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    input.transferTo(buffer);
+    byte[] data = buffer.toByteArray();
+
+    String filePath = path.substring(0, path.length() - extension.length());
+    String expected = getChecksum(repository, path);
+    String actual = parseChecksum(new String(data, StandardCharsets.US_ASCII));
+
+    if (expected != null && expected.equals(actual)) {
+      return;
+    }
+
+    if (expected != null) {
+      log.warn("Uploaded checksum for {} in {} does not match the generated checksum",
+          filePath, repository);
+    }
+
+    storage.writeFile(repository, path, new ByteArrayInputStream(data));
+    checksums.invalidate(repository, filePath);
+  }
+
+  /**
+   * Gets the cached content of a checksum file.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the checksum file.
+   * @return the checksum or {@code null} if the path is not a checksum file or it is not known.
+   */
+  private String getChecksum(String repository, String path) {
+    String extension = getChecksumExtension(path);
+
+    if (extension == null) {
+      return null;
+    }
+
+    Checksums value =
+        checksums.get(repository, path.substring(0, path.length() - extension.length()));
+    return value == null ? null : value.getChecksums().get(extension);
+  }
+
+  /**
+   * Reads the checksum files of a file for the cache.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the checksums or {@code null} if the file has no checksum files.
+   */
+  private Checksums fetchChecksums(String repository, String path) {
+    try {
+      Checksums value = new Checksums();
+
+      for (String[] algorithm : ALGORITHMS) {
+        String checksumPath = path + algorithm[0];
+
+        if (storage.exists(repository, checksumPath)) {
+          try (InputStream input = storage.readFile(repository, checksumPath)) {
+            String checksum =
+                parseChecksum(new String(input.readAllBytes(), StandardCharsets.US_ASCII));
+
+            if (checksum != null) {
+              value.getChecksums().put(algorithm[0], checksum);
+            }
+          }
+        }
+      }
+
+      return value.getChecksums().isEmpty() ? null : value;
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read checksums", e);
+    }
+  }
+
+  /**
+   * Gets the extension of a checksum file.
+   *
+   * @param path the path to the file.
+   * @return the extension or {@code null} if the file is not a checksum file.
+   */
+  private static String getChecksumExtension(String path) {
+    for (String[] algorithm : ALGORITHMS) {
+      if (path.endsWith(algorithm[0])) {
+        return algorithm[0];
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Parses the content of a checksum file. Some clients write the file name after the checksum,
+   * so only the first token is used.
+   *
+   * @param content the content of the checksum file.
+   * @return the lower-case hex-encoded checksum or {@code null} if the file is empty.
+   */
+  private static String parseChecksum(String content) {
+    String trimmed = content.trim();
+
+    if (trimmed.isEmpty()) {
+      return null;
+    }
+
+    return trimmed.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Creates a message digest.
+   *
+   * @param algorithm the hash algorithm.
+   * @return the message digest.
+   * @throws IOException if the algorithm is not supported.
+   */
+  private static MessageDigest createDigest(String algorithm) throws IOException {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Failed to calculate digest", e);
+    }
+  }
+
+  /**
+   * Hex-encodes a digest.
+   *
+   * @param digest the digest.
+   * @return the hex-encoded digest.
+   */
+  private static String toHex(byte[] digest) {
+    StringBuilder hex = new StringBuilder();
+
+    for (byte b : digest) {
+      hex.append(String.format("%02x", ((int) b) & 0xff));
+    }
+
+    return hex.toString();
+  }
+
+  @Data
+  @NoArgsConstructor
+  public static final class Checksums implements Serializable {
+
+    private Map<String, String> checksums = new HashMap<>();
+  }
+}
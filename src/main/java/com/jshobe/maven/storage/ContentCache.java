@@ -0,0 +1,258 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code ContentCache} holds the content of small files in direct buffers outside of the Java
+ * heap. The total size of the cached content is limited by a byte budget. When the budget is
+ * exceeded, a file is only admitted if it has been accessed more often than the least recently
+ * used file that it would replace, so a scan of cold files does not flush the hot ones.
+ *
+ * <p>Each buffer is reference counted by the cache and by the streams that read it, and is freed
+ * as soon as it has been removed from the cache and its last stream has been closed, rather than
+ * when the garbage collector finds it. The budget covers every buffer that has not been freed, so
+ * a removed buffer that is still being read counts against it until its readers finish.
+ */
+@Slf4j
+final class ContentCache {
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  private final long capacity;
+  private final long threshold;
+  private final Map<String, Entry> entries;
+  private final FrequencySketch sketch;
+  private long allocated;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+
+    try {
+      Class<?> type = Class.forName("sun.misc.Unsafe");
+      Field field = type.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      unsafe = field.get(null);
+      invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.warn("Direct buffers cannot be freed explicitly and will be freed by the garbage " +
+          "collector", e);
+    }
+
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  /**
+   * Creates a new instance of {@code ContentCache}.
+   *
+   * @param capacity  the maximum total size of the cached content in bytes.
+   * @param threshold the maximum size in bytes of a file that may be cached.
+   */
+  ContentCache(long capacity, long threshold) {
+    this.capacity = capacity;
+    this.threshold = Math.min(threshold, capacity);
+    this.entries = new LinkedHashMap<>(16, 0.75F, true);
+    this.sketch = new FrequencySketch(
+        (int) Math.min(1 << 20, Math.max(capacity / Math.max(threshold / 4, 1L), 1024L)));
+  }
+
+  /**
+   * Determines if a file is small enough to be cached.
+   *
+   * @param file the file.
+   * @return {@code true} if the file may be cached or {@code false} if not.
+   */
+  boolean accepts(StorageFile file) {
+    return !file.isDirectory() && file.getSize() <= threshold;
+  }
+
+  /**
+   * Opens a stream of the content of a file and records the access. The buffer holding the content
+   * is not freed until the stream is closed.
+   *
+   * @param file the current version of the file.
+   * @return a stream of the file content or {@code null} if the current version of the file is not
+   *     cached.
+   */
+  InputStream open(StorageFile file) {
+    String key = getKey(file.getRepository(), file.getPath());
+    sketch.increment(key);
+    Entry entry;
+
+    synchronized (this) {
+      entry = entries.get(key);
+
+      if (entry == null) {
+        return null;
+      }
+
+      if (!entry.file.equals(file)) {
+        remove(key);
+        return null;
+      }
+
+      entry.references.incrementAndGet();
+    }
+
+    return new ByteBufferInputStream(entry.data.duplicate(), () -> release(entry));
+  }
+
+  /**
+   * Determines if the content of a file is cached. The check is not counted as an access when
+   * deciding which files to admit.
+   *
+   * @param file the current version of the file.
+   * @return {@code true} if the current version of the file is cached or {@code false} if not.
+   */
+  synchronized boolean contains(StorageFile file) {
+    Entry entry = entries.get(getKey(file.getRepository(), file.getPath()));
+    return entry != null && entry.file.equals(file);
+  }
+
+  /**
+   * Adds the content of a file to the cache, if it is accessed often enough to be admitted.
+   *
+   * @param file the version of the file that was read.
+   * @param data the file content.
+   */
+  void put(StorageFile file, byte[] data) {
+    if (data.length > threshold) {
+      return;
+    }
+
+    String key = getKey(file.getRepository(), file.getPath());
+    int frequency = sketch.frequency(key);
+
+    synchronized (this) {
+      remove(key);
+      List<String> victims = new ArrayList<>();
+      long available = capacity - allocated;
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+      while (available < data.length && iterator.hasNext()) {
+        Map.Entry<String, Entry> victim = iterator.next();
+
+        if (sketch.frequency(victim.getKey()) > frequency) {
+          return;
+        }
+
+        victims.add(victim.getKey());
+        available += victim.getValue().buffer.capacity();
+      }
+
+      victims.forEach(this::remove);
+
+      // evicted buffers that are still being read are not freed yet
+      if (capacity - allocated < data.length) {
+        return;
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+      buffer.put(data).flip();
+      entries.put(key, new Entry(file, buffer));
+      allocated += data.length;
+    }
+  }
+
+  /**
+   * Removes a file from the cache.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   */
+  synchronized void invalidate(String repository, String path) {
+    remove(getKey(repository, path));
+  }
+
+  /**
+   * Removes an entry from the cache.
+   *
+   * @param key the cache key.
+   */
+  private void remove(String key) {
+    Entry entry = entries.remove(key);
+
+    if (entry != null) {
+      release(entry);
+    }
+  }
+
+  /**
+   * Releases a reference to an entry, freeing its buffer when the last reference is released.
+   *
+   * @param entry the entry.
+   */
+  private void release(Entry entry) {
+    if (entry.references.decrementAndGet() > 0) {
+      return;
+    }
+
+    synchronized (this) {
+      allocated -= entry.buffer.capacity();
+    }
+
+    if (INVOKE_CLEANER != null) {
+      try {
+        INVOKE_CLEANER.invoke(UNSAFE, entry.buffer);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        log.warn("Failed to free a direct buffer", e);
+      }
+    }
+  }
+
+  /**
+   * Gets the cache key of a file.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the cache key.
+   */
+  private static String getKey(String repository, String path) {
+    return repository + '/' + path;
+  }
+
+  private static final class Entry {
+
+    private final StorageFile file;
+    private final ByteBuffer buffer;
+    private final ByteBuffer data;
+    private final AtomicInteger references;
+
+    Entry(StorageFile file, ByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+      this.data = buffer.asReadOnlyBuffer();
+      this.references = new AtomicInteger(1);
+    }
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * {@code ContentStore} is a content-addressed store of file content for {@link LocalStorage}.
+ * Each distinct file content is stored once as a blob named by its SHA-256 digest, and the files
+ * in the repositories are hard links to the blobs. Since files are never modified in place, a blob
+ * may safely be shared by any number of files. A blob that is no longer linked to any file is
+ * garbage and can be removed with {@link #collectGarbage()}.
+ *
+ * <p>A store that has published a file holds a shared lock on the blob directory until it is
+ * closed, and garbage collection takes an exclusive lock, so a blob is never removed between being
+ * found and being linked by a concurrent publish, in this process or in a running server. Link
+ * counts are read from the {@code unix} file attribute view, so the storage directory must be on a
+ * file system that supports it.
+ */
+public class ContentStore implements Closeable {
+
+  /**
+   * The name of the directory, in the storage directory, that contains the blobs.
+   */
+  public static final String DIRECTORY = ".cas";
+
+  private static final String LOCK_FILE = ".lock";
+
+  private final Path root;
+  private final ReadWriteLock lock;
+  private FileChannel lockChannel;
+  private FileLock sharedLock;
+
+  /**
+   * Creates a new instance of {@code ContentStore}.
+   *
+   * @param storageRoot the path to the storage directory, which must be on the same file system
+   *                    as the repositories so that hard links can be created.
+   * @throws IOException if the blob directory could not be created or its file system does not
+   *                     report link counts.
+   */
+  public ContentStore(Path storageRoot) throws IOException {
+    this.root = storageRoot.toAbsolutePath().resolve(DIRECTORY);
+    this.lock = new ReentrantReadWriteLock();
+    Files.createDirectories(root);
+
+    if (!Files.getFileStore(root).supportsFileAttributeView("unix")) {
+      throw new IOException(
+          "The file system of " + root + " does not support the link counts required for " +
+              "deduplication");
+    }
+  }
+
+  /**
+   * Creates a message digest that calculates the key of a blob.
+   *
+   * @return the message digest.
+   * @throws IOException if the digest algorithm is not available.
+   */
+  public static MessageDigest createDigest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Failed to calculate digest", e);
+    }
+  }
+
+  /**
+   * Publishes a newly written file. If a blob with the same content exists, the file is replaced
+   * by a link to it and the written file is discarded; otherwise the written file becomes the
+   * blob. The target path is replaced atomically. A reused blob is never modified, since that
+   * would change every file that links to it, so the published file reports the modification time
+   * of the blob.
+   *
+   * @param tempPath   the path to the written file.
+   * @param targetPath the path at which the file is published.
+   * @param digest     the SHA-256 digest of the file content.
+   * @return the path of the blob directory if a new blob was added, or {@code null} if an
+   *     existing blob was reused.
+   * @throws IOException if the file could not be published.
+   */
+  public Path publish(Path tempPath, Path targetPath, byte[] digest) throws IOException {
+    Path blobPath = getBlobPath(digest);
+    Path addedTo = null;
+
+    lock.readLock().lock();
+
+    try {
+      acquireSharedLock();
+
+      if (!Files.exists(blobPath)) {
+        Files.createDirectories(blobPath.getParent());
+        Files.move(tempPath, blobPath, StandardCopyOption.ATOMIC_MOVE);
+        addedTo = blobPath.getParent();
+      }
+
+      link(blobPath, targetPath);
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    return addedTo;
+  }
+
+  /**
+   * Converts the files in a directory tree to links to blobs, sharing the content of identical
+   * files.
+   *
+   * @param directory the path to the directory.
+   * @return the result of the migration.
+   * @throws IOException if an I/O error occurs.
+   */
+  public MigrationResult migrate(Path directory) throws IOException {
+    MigrationResult result = new MigrationResult();
+
+    Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        return dir.toAbsolutePath().startsWith(root) ?
+            FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (attrs.isRegularFile() && !file.getFileName().toString().startsWith(".")) {
+          migrateFile(file, attrs.size(), result);
+        }
+
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Removes the blobs that are no longer linked to any file. Files cannot be published while the
+   * garbage is collected.
+   *
+   * @return the number of bytes that were freed.
+   * @throws IOException if an I/O error occurs or the store is in use by another process.
+   */
+  public long collectGarbage() throws IOException {
+    long[] freed = {0L};
+    Path lockPath = root.resolve(LOCK_FILE);
+
+    lock.writeLock().lock();
+
+    try {
+      releaseSharedLock();
+
+      try (FileChannel channel = openLockFile();
+          FileLock exclusive = channel.tryLock()) {
+        if (exclusive == null) {
+          throw new IOException("The content store at " + root + " is in use by another process");
+        }
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            if (!file.equals(lockPath) && getLinkCount(file) <= 1) {
+              Files.delete(file);
+              freed[0] += attrs.size();
+            }
+
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+            if (!dir.equals(root) && isEmpty(dir)) {
+              Files.delete(dir);
+            }
+
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    return freed[0];
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+
+    try {
+      releaseSharedLock();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Acquires the shared lock on the blob directory, if it is not already held, waiting while
+   * another process collects garbage.
+   *
+   * @throws IOException if the lock could not be acquired.
+   */
+  private synchronized void acquireSharedLock() throws IOException {
+    if (sharedLock == null) {
+      FileChannel channel = openLockFile();
+
+      try {
+        sharedLock = channel.lock(0L, Long.MAX_VALUE, true);
+        lockChannel = channel;
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Releases the shared lock on the blob directory, if it is held.
+   *
+   * @throws IOException if the lock could not be released.
+   */
+  private synchronized void releaseSharedLock() throws IOException {
+    if (lockChannel != null) {
+      try {
+        lockChannel.close();
+      } finally {
+        lockChannel = null;
+        sharedLock = null;
+      }
+    }
+  }
+
+  /**
+   * Opens the lock file of the blob directory.
+   *
+   * @return the file channel.
+   * @throws IOException if the file could not be opened.
+   */
+  private FileChannel openLockFile() throws IOException {
+    return FileChannel.open(root.resolve(LOCK_FILE),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  /**
+   * Converts a file to a link to a blob.
+   *
+   * @param file   the path to the file.
+   * @param size   the size of the file.
+   * @param result the migration result to update.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void migrateFile(Path file, long size, MigrationResult result) throws IOException {
+    result.setFiles(result.getFiles() + 1);
+
+    if (getLinkCount(file) > 1) {
+      return;
+    }
+
+    MessageDigest digest = createDigest();
+
+    try (InputStream input = new DigestInputStream(Files.newInputStream(file), digest)) {
+      input.transferTo(OutputStream.nullOutputStream());
+    }
+
+    Path blobPath = getBlobPath(digest.digest());
+
+    if (Files.exists(blobPath)) {
+      link(blobPath, file);
+      result.setDeduplicated(result.getDeduplicated() + 1);
+      result.setBytesSaved(result.getBytesSaved() + size);
+    } else {
+      Files.createDirectories(blobPath.getParent());
+      Files.createLink(blobPath, file);
+    }
+  }
+
+  /**
+   * Atomically replaces a path with a link to a blob.
+   *
+   * @param blobPath   the path to the blob.
+   * @param targetPath the path to replace.
+   * @throws IOException if the link could not be created.
+   */
+  private void link(Path blobPath, Path targetPath) throws IOException {
+    Path linkPath = targetPath.resolveSibling(LocalStorage.TEMP_PREFIX + UUID.randomUUID());
+
+    try {
+      Files.createLink(linkPath, blobPath);
+      Files.move(linkPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(linkPath);
+    }
+  }
+
+  /**
+   * Gets the path to the blob with a specified digest. Blobs are spread over two levels of
+   * directories so that no single directory becomes too large.
+   *
+   * @param digest the SHA-256 digest of the blob content.
+   * @return the path to the blob.
+   */
+  private Path getBlobPath(byte[] digest) {
+    StringBuilder hex = new StringBuilder();
+
+    for (byte b : digest) {
+      hex.append(String.format("%02x", ((int) b) & 0xff));
+    }
+
+    return root.resolve(hex.substring(0, 2)).resolve(hex.substring(2, 4)).resolve(hex.toString());
+  }
+
+  /**
+   * Gets the number of hard links to a file.
+   *
+   * @param file the path to the file.
+   * @return the link count.
+   * @throws IOException if the link count could not be read.
+   */
+  private static int getLinkCount(Path file) throws IOException {
+    return (Integer) Files.getAttribute(file, "unix:nlink");
+  }
+
+  /**
+   * Determines if a directory is empty.
+   *
+   * @param dir the path to the directory.
+   * @return {@code true} if the directory is empty or {@code false} if not.
+   * @throws IOException if the directory could not be read.
+   */
+  private static boolean isEmpty(Path dir) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      return !stream.iterator().hasNext();
+    }
+  }
+
+  /**
+   * {@code MigrationResult} contains the result of converting a directory tree.
+   */
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static final class MigrationResult {
+
+    /**
+     * The number of files that were examined.
+     */
+    private long files;
+
+    /**
+     * The number of files that were replaced by a link to an existing blob.
+     */
+    private long deduplicated;
+
+    /**
+     * The number of bytes that were saved.
+     */
+    private long bytesSaved;
+  }
+}
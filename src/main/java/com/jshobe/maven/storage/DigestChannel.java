@@ -0,0 +1,71 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * {@code DigestChannel} is a readable channel that updates one or more message digests with the
+ * bytes that are read through it.
+ */
+final class DigestChannel implements ReadableByteChannel {
+
+  private final ReadableByteChannel channel;
+  private final MessageDigest[] digests;
+
+  /**
+   * Creates a new instance of {@code DigestChannel}.
+   *
+   * @param channel the channel from which bytes are read.
+   * @param digests the message digests to update.
+   */
+  DigestChannel(ReadableByteChannel channel, MessageDigest... digests) {
+    this.channel = channel;
+    this.digests = digests;
+  }
+
+  @Override
+  public int read(ByteBuffer dst) throws IOException {
+    int position = dst.position();
+    int count = channel.read(dst);
+
+    if (count > 0) {
+      for (MessageDigest digest : digests) {
+        ByteBuffer read = dst.duplicate();
+        read.position(position).limit(position + count);
+        digest.update(read);
+      }
+    }
+
+    return count;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.concurrent.Flow;
+
+/**
+ * {@code DigestPublisher} is a publisher that updates one or more message digests with the buffers
+ * that are published through it.
+ */
+final class DigestPublisher implements Flow.Publisher<ByteBuffer> {
+
+  private final Flow.Publisher<ByteBuffer> publisher;
+  private final MessageDigest[] digests;
+
+  /**
+   * Creates a new instance of {@code DigestPublisher}.
+   *
+   * @param publisher the publisher of the buffers.
+   * @param digests   the message digests to update.
+   */
+  DigestPublisher(Flow.Publisher<ByteBuffer> publisher, MessageDigest... digests) {
+    this.publisher = publisher;
+    this.digests = digests;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    publisher.subscribe(new Flow.Subscriber<>() {
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscriber.onSubscribe(subscription);
+      }
+
+      @Override
+      public void onNext(ByteBuffer buffer) {
+        for (MessageDigest digest : digests) {
+          digest.update(buffer.duplicate());
+        }
+
+        subscriber.onNext(buffer);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        subscriber.onError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        subscriber.onComplete();
+      }
+    });
+  }
+}
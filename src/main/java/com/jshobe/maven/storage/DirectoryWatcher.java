@@ -0,0 +1,225 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code DirectoryWatcher} watches the repository directories of {@link LocalStorage} for changes
+ * and notifies listeners of each changed file, so that cached data is invalidated when files are
+ * copied into or removed from the storage directory by other processes. Directories that are
+ * created are watched as soon as the change is detected, and their contents are reported as
+ * changed.
+ */
+@Slf4j
+final class DirectoryWatcher {
+
+  private final Path root;
+  private final String ignoredPrefix;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> keys;
+  private final List<StorageListener> listeners;
+
+  /**
+   * Creates a new instance of {@code DirectoryWatcher} and starts watching for changes.
+   *
+   * @param root          the path to the storage directory.
+   * @param repositories  the names of the repositories to watch.
+   * @param ignoredPrefix the prefix of the names of files for which changes are not reported.
+   * @throws IOException if the directories could not be watched, for example because the limit
+   *                     of watches has been reached. No directories are watched in that case.
+   */
+  DirectoryWatcher(Path root, Set<String> repositories, String ignoredPrefix)
+      throws IOException {
+    this.root = root;
+    this.ignoredPrefix = ignoredPrefix;
+    this.watchService = root.getFileSystem().newWatchService();
+    this.keys = new ConcurrentHashMap<>();
+    this.listeners = new CopyOnWriteArrayList<>();
+
+    try {
+      for (String repository : repositories) {
+        registerTree(root.resolve(repository), false);
+      }
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+
+    Thread thread = new Thread(this::run, "storage-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Adds a listener that is notified of changed files.
+   *
+   * @param listener the listener to add.
+   */
+  void addListener(StorageListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Stops watching for changes.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  void close() throws IOException {
+    watchService.close();
+  }
+
+  /**
+   * Runs the watcher thread.
+   */
+  private void run() {
+    while (true) {
+      WatchKey key;
+
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      Path directory = keys.get(key);
+
+      if (directory != null) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+          try {
+            handleEvent(directory, event);
+          } catch (IOException | RuntimeException e) {
+            log.warn("Failed to process a change in {}", directory, e);
+          }
+        }
+      }
+
+      if (!key.reset()) {
+        keys.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Handles a change to a watched directory.
+   *
+   * @param directory the watched directory.
+   * @param event     the change event.
+   * @throws IOException if a new directory could not be watched.
+   */
+  private void handleEvent(Path directory, WatchEvent<?> event) throws IOException {
+    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+      log.warn("Changes to {} were lost, invalidating the directory contents", directory);
+      fireFileChanged(directory);
+
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        stream.forEach(this::fireFileChanged);
+      }
+
+      return;
+    }
+
+    Path path = directory.resolve((Path) event.context());
+
+    if (path.getFileName().toString().startsWith(ignoredPrefix)) {
+      return;
+    }
+
+    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+        Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+      registerTree(path, true);
+    } else {
+      fireFileChanged(path);
+    }
+  }
+
+  /**
+   * Watches a directory and all of its subdirectories.
+   *
+   * @param directory the path to the directory.
+   * @param notify    {@code true} to report each file in the tree as changed.
+   * @throws IOException if the directories could not be watched.
+   */
+  private void registerTree(Path directory, boolean notify) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        keys.put(dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+
+        if (notify) {
+          fireFileChanged(dir);
+        }
+
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (notify && !file.getFileName().toString().startsWith(ignoredPrefix)) {
+          fireFileChanged(file);
+        }
+
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Notifies the listeners that a file has changed.
+   *
+   * @param path the path to the file.
+   */
+  private void fireFileChanged(Path path) {
+    Path relativePath = root.relativize(path);
+    String repository = relativePath.getName(0).toString();
+    StringBuilder filePath = new StringBuilder();
+
+    for (int i = 1; i < relativePath.getNameCount(); i++) {
+      if (filePath.length() > 0) {
+        filePath.append('/');
+      }
+
+      filePath.append(relativePath.getName(i));
+    }
+
+    for (StorageListener listener : listeners) {
+      listener.fileChanged(repository, filePath.toString());
+    }
+  }
+}
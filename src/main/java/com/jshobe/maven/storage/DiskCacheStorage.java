@@ -0,0 +1,865 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code DiskCacheStorage} is an implementation of {@link Storage} that wraps a remote storage
+ * instance and keeps copies of the files read from it in a directory on the local disk. A file is
+ * copied to the cache as it is first read, including when it is read asynchronously, and later
+ * reads are served from the local copy, which is also exposed through
+ * {@link #getLocalPath(String, String)} so that it is sent with a zero-copy transfer. A copy is
+ * tagged with the entity tag of the response from which it was read, so only files read from
+ * storage that reports it (see {@link Versioned}) are cached.
+ *
+ * <p>The total size of the cached files is limited by a byte budget. When the budget is exceeded,
+ * a file is only admitted if it has been read more often than the least recently used files that
+ * it would replace. A cached copy is checked against the entity tag of the remote file when it has
+ * not been validated within the revalidation interval, and is discarded when the file is written
+ * through this storage or changes. The cache directory is cleared when the storage is created.
+ */
+@Slf4j
+public class DiskCacheStorage implements Storage {
+
+  private static final String TEMP_PREFIX = ".fill-";
+  private static final int GENERATION_STRIPES = 1024;
+
+  private final Storage storage;
+  private final Path directory;
+  private final long capacity;
+  private final long revalidateMillis;
+  private final Map<String, Entry> entries;
+  private final FrequencySketch sketch;
+  private final Set<String> filling;
+  private final AtomicLong sequence;
+  private final long[] generations;
+  private long size;
+
+  /**
+   * Creates a new instance of {@code DiskCacheStorage}.
+   *
+   * @param storage    the wrapped storage.
+   * @param directory  the directory in which the cached files are stored.
+   * @param capacity   the maximum total size of the cached files in bytes.
+   * @param revalidate the time after which a cached file is checked against the remote file.
+   * @throws IOException if the cache directory could not be created or cleared.
+   */
+  public DiskCacheStorage(Storage storage, Path directory, long capacity, Duration revalidate)
+      throws IOException {
+    this.storage = storage;
+    this.directory = directory.toAbsolutePath();
+    this.capacity = capacity;
+    this.revalidateMillis = revalidate.toMillis();
+    this.entries = new LinkedHashMap<>(16, 0.75F, true);
+    this.sketch = new FrequencySketch(
+        (int) Math.min(1 << 20, Math.max(capacity / (1024L * 1024L), 1024L)));
+    this.filling = ConcurrentHashMap.newKeySet();
+    this.sequence = new AtomicLong();
+    this.generations = new long[GENERATION_STRIPES];
+    clearDirectory();
+    storage.addStorageListener(this::invalidate);
+  }
+
+  @Override
+  public List<String> getRepositories() throws IOException {
+    return storage.getRepositories();
+  }
+
+  @Override
+  public List<StorageFile> listDirectory(String repository, String path) throws IOException {
+    return storage.listDirectory(repository, path);
+  }
+
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path)
+      throws IOException {
+    return storage.streamDirectory(repository, path);
+  }
+
+  @Override
+  public boolean exists(String repository, String path) throws IOException {
+    return storage.exists(repository, path);
+  }
+
+  @Override
+  public Optional<StorageFile> getFile(String repository, String path) throws IOException {
+    Optional<StorageFile> file = storage.getFile(repository, path);
+    validate(repository, path, file);
+    return file;
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path) throws IOException {
+    Path cached = lookup(repository, path, true);
+
+    if (cached != null) {
+      try {
+        return Files.newInputStream(cached);
+      } catch (NoSuchFileException e) {
+        // evicted since the lookup, so read from the wrapped storage
+      }
+    }
+
+    return fill(repository, path);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    Path cached = lookup(repository, path, true);
+
+    if (cached != null) {
+      try {
+        FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ);
+        channel.position(offset);
+        return new RangeInputStream(Channels.newInputStream(channel), length);
+      } catch (NoSuchFileException e) {
+        // evicted since the lookup, so read from the wrapped storage
+      }
+    }
+
+    return storage.readFile(repository, path, offset, length);
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    Path cached = lookup(repository, path, false);
+
+    if (cached != null) {
+      return new InputStreamPublisher(() -> {
+        try {
+          return Files.newInputStream(cached);
+        } catch (NoSuchFileException e) {
+          return fill(repository, path);
+        }
+      }, executor);
+    }
+
+    Flow.Publisher<ByteBuffer> publisher = storage.readFileAsync(repository, path, executor);
+
+    if (!(publisher instanceof Versioned)) {
+      return new InputStreamPublisher(() -> fill(repository, path), executor);
+    }
+
+    return new TeePublisher(
+        publisher, new FillSink(repository, path, (Versioned) publisher, executor));
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    Path cached = lookup(repository, path, true);
+
+    if (cached != null) {
+      try {
+        return FileChannel.open(cached, StandardOpenOption.READ);
+      } catch (NoSuchFileException e) {
+        // evicted since the lookup, so read from the wrapped storage
+      }
+    }
+
+    return Channels.newChannel(fill(repository, path));
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) throws IOException {
+    return Optional.ofNullable(lookup(repository, path, false));
+  }
+
+  @Override
+  public void writeFile(String repository, String path, InputStream input) throws IOException {
+    invalidate(repository, path);
+
+    try {
+      storage.writeFile(repository, path, input);
+    } finally {
+      invalidate(repository, path);
+    }
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    invalidate(repository, path);
+
+    try {
+      storage.writeFile(repository, path, channel);
+    } finally {
+      invalidate(repository, path);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    invalidate(repository, path);
+    return storage.writeFileAsync(repository, path, length, body, executor)
+        .whenComplete((result, error) -> invalidate(repository, path));
+  }
+
+  @Override
+  public void createDirectory(String repository, String path) throws IOException {
+    storage.createDirectory(repository, path);
+  }
+
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    storage.addStorageListener(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    storage.close();
+  }
+
+  /**
+   * Gets the cached copy of a file and records the access. If the copy has not been validated
+   * within the revalidation interval, it is checked against the remote file, or, if validation is
+   * not allowed because the caller must not block, it is not used.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param validate   {@code true} to validate the copy if necessary or {@code false} if not.
+   * @return the path to the cached copy or {@code null} if it is not cached or not current.
+   * @throws IOException if an I/O error occurs while validating the copy.
+   */
+  private Path lookup(String repository, String path, boolean validate) throws IOException {
+    String key = getKey(repository, path);
+    sketch.increment(key);
+    Entry entry;
+
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+
+    if (entry == null) {
+      return null;
+    }
+
+    if (System.currentTimeMillis() - entry.validated > revalidateMillis) {
+      if (!validate || !validate(repository, path, storage.getFile(repository, path))) {
+        return null;
+      }
+    }
+
+    return entry.path;
+  }
+
+  /**
+   * Checks the cached copy of a file, if there is one, against the current remote file. A copy of
+   * a different version is discarded, and a copy of the same version is marked as validated.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param file       the current remote file.
+   * @return {@code true} if there is a current cached copy or {@code false} if not.
+   */
+  private boolean validate(String repository, String path, Optional<StorageFile> file) {
+    String key = getKey(repository, path);
+    Entry removed;
+
+    synchronized (this) {
+      Entry entry = entries.get(key);
+
+      if (entry == null) {
+        return false;
+      }
+
+      if (file.isPresent() && entry.version.equals(file.get().getEtag())) {
+        entry.validated = System.currentTimeMillis();
+        return true;
+      }
+
+      removed = remove(key);
+    }
+
+    delete(removed);
+    return false;
+  }
+
+  /**
+   * Reads a file from the wrapped storage, copying it to the cache as it is read. The file is not
+   * copied if the stream does not report its version, if it is already being copied by another
+   * reader, or, once more than the capacity of the cache has been read, at all.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return an input stream from which the file is read.
+   * @throws IOException if an I/O error occurs.
+   */
+  private InputStream fill(String repository, String path) throws IOException {
+    String key = getKey(repository, path);
+    long generation = getGeneration(key);
+    InputStream input = storage.readFile(repository, path);
+
+    if (!(input instanceof Versioned) || !filling.add(key)) {
+      return input;
+    }
+
+    Path temp = null;
+
+    try {
+      temp = Files.createTempFile(directory, TEMP_PREFIX, null);
+      return new FillInputStream(input, repository, path, generation, temp);
+    } catch (IOException | RuntimeException e) {
+      filling.remove(key);
+      input.close();
+
+      if (temp != null) {
+        Files.deleteIfExists(temp);
+      }
+
+      throw e;
+    }
+  }
+
+  /**
+   * Adds a completely copied file to the cache, if it is read often enough to be admitted. The
+   * copy is moved into place and the files of the entries that it replaces are deleted outside of
+   * the lock, so that lookups are not blocked by file system operations.
+   *
+   * <p>A copy is discarded if the file was invalidated after the read started, or if the version
+   * that was read is no longer the current version of the file. Otherwise, a read that started
+   * before a write could publish the old content after the write had invalidated the cache, and it
+   * would be served without revalidation for the whole revalidation interval.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param generation the invalidation generation of the file when the read started.
+   * @param length     the size of the copy in bytes.
+   * @param version    the version of the file that was copied.
+   * @param temp       the temporary file containing the copy.
+   * @throws IOException if the copy could not be moved into place or the current version of the
+   *                     file could not be read.
+   */
+  private void publish(String repository, String path, long generation, long length,
+      String version, Path temp) throws IOException {
+    Optional<StorageFile> current = storage.getFile(repository, path);
+
+    if (current.isEmpty() || !version.equals(current.get().getEtag())) {
+      return;
+    }
+
+    String key = getKey(repository, path);
+    Path target = getCachePath(key);
+    Files.createDirectories(target.getParent());
+    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    int frequency = sketch.frequency(key);
+    List<Entry> removed = new ArrayList<>();
+    boolean admitted = true;
+
+    synchronized (this) {
+      if (generations[getStripe(key)] != generation) {
+        admitted = false;
+      }
+
+      removed.add(remove(key));
+      List<String> victims = new ArrayList<>();
+      long available = capacity - size;
+      Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+      while (admitted && available < length && iterator.hasNext()) {
+        Map.Entry<String, Entry> victim = iterator.next();
+
+        if (sketch.frequency(victim.getKey()) > frequency) {
+          admitted = false;
+          break;
+        }
+
+        victims.add(victim.getKey());
+        available += victim.getValue().size;
+      }
+
+      if (admitted) {
+        victims.forEach(victim -> removed.add(remove(victim)));
+        entries.put(key, new Entry(target, length, version));
+        size += length;
+      }
+    }
+
+    if (!admitted) {
+      Files.deleteIfExists(target);
+    }
+
+    removed.forEach(this::delete);
+  }
+
+  /**
+   * Removes the cached copy of a file that was written or changed.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   */
+  private void invalidate(String repository, String path) {
+    String key = getKey(repository, path);
+    Entry removed;
+
+    synchronized (this) {
+      generations[getStripe(key)]++;
+      removed = remove(key);
+    }
+
+    delete(removed);
+  }
+
+  /**
+   * Gets the invalidation generation of a file, which changes whenever the file is invalidated.
+   * Generations are kept for stripes of keys, so invalidating a file may also change the
+   * generation of other files, which only prevents them from being cached by reads that are in
+   * progress.
+   *
+   * @param key the cache key.
+   * @return the generation.
+   */
+  private synchronized long getGeneration(String key) {
+    return generations[getStripe(key)];
+  }
+
+  /**
+   * Gets the stripe of the invalidation generations that a file belongs to.
+   *
+   * @param key the cache key.
+   * @return the index of the stripe.
+   */
+  private static int getStripe(String key) {
+    return key.hashCode() & (GENERATION_STRIPES - 1);
+  }
+
+  /**
+   * Removes an entry from the cache. This method must be called while holding the lock, and the
+   * file of the removed entry must be deleted after releasing it.
+   *
+   * @param key the cache key.
+   * @return the removed entry or {@code null} if there was none.
+   */
+  private Entry remove(String key) {
+    Entry entry = entries.remove(key);
+
+    if (entry != null) {
+      size -= entry.size;
+    }
+
+    return entry;
+  }
+
+  /**
+   * Deletes the file of a removed entry. Readers that have already opened the file continue to
+   * read it.
+   *
+   * @param entry the removed entry or {@code null} if there was none.
+   */
+  private void delete(Entry entry) {
+    if (entry != null) {
+      try {
+        Files.deleteIfExists(entry.path);
+      } catch (IOException e) {
+        log.warn("Failed to delete cached file {}", entry.path, e);
+      }
+    }
+  }
+
+  /**
+   * Deletes the files left in the cache directory by a previous run.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  private void clearDirectory() throws IOException {
+    Files.createDirectories(directory);
+    Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        if (exc != null) {
+          throw exc;
+        }
+
+        if (!dir.equals(directory)) {
+          Files.delete(dir);
+        }
+
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Gets a new path for a cached copy of a file. Copies are named by the SHA-256 digest of their
+   * key and a sequence number, and spread over subdirectories named by the first two characters of
+   * the digest. A new copy therefore never replaces the file of an older copy that is about to be
+   * deleted.
+   *
+   * @param key the cache key.
+   * @return the path to the cached copy.
+   * @throws IOException if the digest cannot be calculated.
+   */
+  private Path getCachePath(String key) throws IOException {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      String name = toHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+      return directory.resolve(name.substring(0, 2))
+          .resolve(name + "-" + sequence.incrementAndGet());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Failed to calculate digest", e);
+    }
+  }
+
+  /**
+   * Gets the cache key of a file.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the cache key.
+   */
+  private static String getKey(String repository, String path) {
+    return repository + '/' + path;
+  }
+
+  /**
+   * Hex-encodes a digest.
+   *
+   * @param digest the digest.
+   * @return the hex-encoded digest.
+   */
+  private static String toHex(byte[] digest) {
+    StringBuilder hex = new StringBuilder();
+
+    for (byte b : digest) {
+      hex.append(String.format("%02x", ((int) b) & 0xff));
+    }
+
+    return hex.toString();
+  }
+
+  private static final class Entry {
+
+    private final Path path;
+    private final long size;
+    private final String version;
+    private volatile long validated;
+
+    Entry(Path path, long size, String version) {
+      this.path = path;
+      this.size = size;
+      this.version = version;
+      this.validated = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * {@code FillInputStream} copies the bytes read from a remote file to a temporary file, which is
+   * added to the cache when the stream is closed if the whole file was read.
+   */
+  private final class FillInputStream extends FilterInputStream {
+
+    private final String repository;
+    private final String path;
+    private final String key;
+    private final long generation;
+    private final Versioned source;
+    private final Path temp;
+    private final OutputStream output;
+    private long written;
+    private boolean ended;
+    private boolean failed;
+
+    /**
+     * Creates a new instance of {@code FillInputStream}.
+     *
+     * @param in         the input stream from which the remote file is read, which reports its
+     *                   version.
+     * @param repository the name of the repository.
+     * @param path       the path to the file.
+     * @param generation the invalidation generation of the file when the read started.
+     * @param temp       the temporary file to which the copy is written.
+     * @throws IOException if the temporary file could not be opened.
+     */
+    FillInputStream(InputStream in, String repository, String path, long generation, Path temp)
+        throws IOException {
+      super(in);
+      this.repository = repository;
+      this.path = path;
+      this.key = getKey(repository, path);
+      this.generation = generation;
+      this.source = (Versioned) in;
+      this.temp = temp;
+      this.output = Files.newOutputStream(temp);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+
+      if (b >= 0) {
+        copy(new byte[] {(byte) b}, 0, 1);
+      } else {
+        ended = true;
+      }
+
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int count = super.read(b, off, len);
+
+      if (count > 0) {
+        copy(b, off, count);
+      } else if (count < 0) {
+        ended = true;
+      }
+
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      byte[] buffer = new byte[8192];
+      long skipped = 0L;
+
+      while (skipped < n) {
+        int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+
+        if (count < 0) {
+          break;
+        }
+
+        skipped += count;
+      }
+
+      return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        try {
+          output.close();
+          String version = source.getVersion();
+
+          if (!failed && ended && version != null) {
+            publish(repository, path, generation, written, version, temp);
+          }
+        } catch (IOException | RuntimeException e) {
+          log.warn("Failed to cache {}", key, e);
+        } finally {
+          filling.remove(key);
+          Files.deleteIfExists(temp);
+        }
+      }
+    }
+
+    /**
+     * Writes bytes that were read to the copy. If the copy cannot be written or the file is larger
+     * than the cache, the file is still read but is not cached.
+     *
+     * @param b     the bytes.
+     * @param off   the offset of the first byte.
+     * @param count the number of bytes.
+     */
+    private void copy(byte[] b, int off, int count) {
+      if (failed) {
+        return;
+      }
+
+      if (written + count > capacity) {
+        failed = true;
+        return;
+      }
+
+      try {
+        output.write(b, off, count);
+        written += count;
+      } catch (IOException e) {
+        log.warn("Failed to write cached copy of {}", key, e);
+        failed = true;
+      }
+    }
+  }
+
+  /**
+   * {@code FillSink} copies the buffers of a remote file that is read asynchronously to a
+   * temporary file, which is added to the cache when the whole file has been published. The copy
+   * is tagged with the version reported by the publisher once the response has been received, and
+   * is published on the executor, since that checks the current version of the file.
+   */
+  private final class FillSink implements TeePublisher.Sink {
+
+    private final String repository;
+    private final String path;
+    private final String key;
+    private final long generation;
+    private final Versioned source;
+    private final Executor executor;
+    private FileChannel channel;
+    private Path temp;
+    private long written;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Creates a new instance of {@code FillSink}.
+     *
+     * @param repository the name of the repository.
+     * @param path       the path to the file.
+     * @param source     the publisher of the remote file, which reports its version.
+     * @param executor   the executor on which the copy is published.
+     */
+    FillSink(String repository, String path, Versioned source, Executor executor) {
+      this.repository = repository;
+      this.path = path;
+      this.key = getKey(repository, path);
+      this.generation = getGeneration(key);
+      this.source = source;
+      this.executor = executor;
+    }
+
+    @Override
+    public void write(ByteBuffer buffer) throws IOException {
+      start();
+
+      if (written + buffer.remaining() > capacity) {
+        throw new IOException("The file is larger than the cache");
+      }
+
+      written += buffer.remaining();
+
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+
+    @Override
+    public void complete() throws IOException {
+      start();
+      channel.close();
+      String version = source.getVersion();
+
+      if (version == null) {
+        throw new IOException("The version of the file is not known");
+      }
+
+      executor.execute(() -> {
+        try {
+          publish(repository, path, generation, written, version, temp);
+        } catch (IOException | RuntimeException e) {
+          log.warn("Failed to cache {}", key, e);
+        } finally {
+          finish();
+        }
+      });
+    }
+
+    @Override
+    public void abort() {
+      finish();
+    }
+
+    /**
+     * Closes and deletes the temporary file, which has already been moved into place if the copy
+     * was published, and allows the file to be copied by another reader.
+     */
+    private void finish() {
+      if (finished) {
+        return;
+      }
+
+      finished = true;
+
+      if (!started) {
+        return;
+      }
+
+      filling.remove(key);
+
+      try {
+        if (channel != null) {
+          channel.close();
+        }
+
+        if (temp != null) {
+          Files.deleteIfExists(temp);
+        }
+      } catch (IOException e) {
+        log.warn("Failed to delete cached copy of {}", key, e);
+      }
+    }
+
+    /**
+     * Opens the temporary file when the first buffer is written, if the file is not already being
+     * copied by another reader.
+     *
+     * @throws IOException if the file is already being copied or could not be opened.
+     */
+    private void start() throws IOException {
+      if (channel != null) {
+        return;
+      }
+
+      if (!filling.add(key)) {
+        finished = true;
+        throw new IOException("The file is already being cached");
+      }
+
+      started = true;
+      temp = Files.createTempFile(directory, TEMP_PREFIX, null);
+      channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+/**
+ * {@code FrequencySketch} is a count-min sketch that estimates how often keys have been accessed.
+ * The counters are halved periodically so that the estimates favor recent accesses.
+ */
+final class FrequencySketch {
+
+  private static final int DEPTH = 4;
+  private static final int MAX_COUNT = 15;
+
+  private final int[] counters;
+  private final int mask;
+  private final int resetSize;
+  private int additions;
+
+  /**
+   * Creates a new instance of {@code FrequencySketch}.
+   *
+   * @param width the number of counters in each row, which is rounded up to a power of two.
+   */
+  FrequencySketch(int width) {
+    int size = Integer.highestOneBit(Math.max(width, 16) - 1) << 1;
+    counters = new int[size * DEPTH];
+    mask = size - 1;
+    resetSize = size * 10;
+  }
+
+  /**
+   * Records an access to a key.
+   *
+   * @param key the key.
+   */
+  synchronized void increment(Object key) {
+    int hash = spread(key.hashCode());
+    int min = frequency(hash);
+
+    if (min >= MAX_COUNT) {
+      return;
+    }
+
+    for (int i = 0; i < DEPTH; i++) {
+      int index = indexOf(hash, i);
+
+      if (counters[index] == min) {
+        counters[index]++;
+      }
+    }
+
+    if (++additions >= resetSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Gets the estimated access frequency of a key.
+   *
+   * @param key the key.
+   * @return the estimated frequency.
+   */
+  synchronized int frequency(Object key) {
+    return frequency(spread(key.hashCode()));
+  }
+
+  /**
+   * Gets the estimated access frequency of a hashed key.
+   *
+   * @param hash the spread hash code of the key.
+   * @return the minimum of the counters for the key.
+   */
+  private int frequency(int hash) {
+    int min = MAX_COUNT;
+
+    for (int i = 0; i < DEPTH; i++) {
+      min = Math.min(min, counters[indexOf(hash, i)]);
+    }
+
+    return min;
+  }
+
+  /**
+   * Halves all counters.
+   */
+  private void reset() {
+    for (int i = 0; i < counters.length; i++) {
+      counters[i] >>>= 1;
+    }
+
+    additions /= 2;
+  }
+
+  /**
+   * Gets the index of the counter for a key in a row.
+   *
+   * @param hash the spread hash code of the key.
+   * @param row  the row.
+   * @return the counter index.
+   */
+  private int indexOf(int hash, int row) {
+    int h = (hash + row) * 0x9e3779b9;
+    h ^= h >>> 16;
+    return row * (mask + 1) + (h & mask);
+  }
+
+  /**
+   * Spreads the bits of a hash code.
+   *
+   * @param hash the hash code.
+   * @return the spread hash code.
+   */
+  private static int spread(int hash) {
+    int h = hash * 0x45d9f3b;
+    return h ^ (h >>> 16);
+  }
+}
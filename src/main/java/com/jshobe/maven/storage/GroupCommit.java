@@ -0,0 +1,187 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@code GroupCommit} batches the directory synchronizations that make renamed files durable.
+ * Uploads that finish while a batch is being synchronized are collected into the next batch, and
+ * each directory in a batch is only synchronized once, so concurrent uploads into the same
+ * directory (an artifact, its POM and their checksum files) share a single {@code fsync}.
+ */
+@Slf4j
+final class GroupCommit {
+
+  private final BlockingQueue<Request> queue;
+  private final Thread thread;
+  private volatile boolean closed;
+
+  /**
+   * Creates a new instance of {@code GroupCommit} and starts the committer thread.
+   */
+  GroupCommit() {
+    queue = new LinkedBlockingQueue<>();
+    thread = new Thread(this::run, "group-commit");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Synchronizes a directory, waiting until the batch that contains it has been committed.
+   *
+   * @param directory the path to the directory.
+   * @throws IOException if the directory could not be synchronized or the committer has been
+   *                     stopped.
+   */
+  void sync(Path directory) throws IOException {
+    if (closed) {
+      throw new IOException("Group commit is closed");
+    }
+
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    Request request = new Request(directory, future);
+    queue.add(request);
+
+    // a request added after the final drain would never be completed
+    if (closed && queue.remove(request)) {
+      throw new IOException("Group commit is closed");
+    }
+
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for commit");
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to sync directory", e.getCause());
+    }
+  }
+
+  /**
+   * Stops the committer thread. Pending synchronizations fail, as do any that are requested
+   * afterwards.
+   */
+  void close() {
+    closed = true;
+    thread.interrupt();
+  }
+
+  /**
+   * Runs the committer thread.
+   */
+  private void run() {
+    List<Request> batch = new ArrayList<>();
+    Map<Path, IOException> results = new HashMap<>();
+
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        break;
+      }
+
+      queue.drainTo(batch);
+
+      for (Request request : batch) {
+        if (!results.containsKey(request.directory)) {
+          results.put(request.directory, syncQuietly(request.directory));
+        }
+      }
+
+      for (Request request : batch) {
+        IOException error = results.get(request.directory);
+
+        if (error == null) {
+          request.future.complete(null);
+        } else {
+          request.future.completeExceptionally(error);
+        }
+      }
+
+      batch.clear();
+      results.clear();
+    }
+
+    queue.drainTo(batch);
+    batch.forEach(request -> request.future.completeExceptionally(
+        new IOException("The committer has been stopped")));
+  }
+
+  /**
+   * Synchronizes a directory, capturing any error.
+   *
+   * @param directory the path to the directory.
+   * @return the error or {@code null} if the directory was synchronized.
+   */
+  private static IOException syncQuietly(Path directory) {
+    try {
+      syncDirectory(directory);
+      return null;
+    } catch (IOException e) {
+      return e;
+    }
+  }
+
+  /**
+   * Synchronizes a directory so that the entries that have been renamed into it are durable.
+   * Directories cannot be opened on some platforms, in which case this does nothing.
+   *
+   * @param directory the path to the directory.
+   * @throws IOException if the directory could not be synchronized.
+   */
+  static void syncDirectory(Path directory) throws IOException {
+    FileChannel channel;
+
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      log.debug("Directory {} cannot be opened for synchronization", directory, e);
+      return;
+    }
+
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
+  private static final class Request {
+
+    private final Path directory;
+    private final CompletableFuture<Void> future;
+
+    Request(Path directory, CompletableFuture<Void> future) {
+      this.directory = directory;
+      this.future = future;
+    }
+  }
+}
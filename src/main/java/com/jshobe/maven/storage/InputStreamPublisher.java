@@ -0,0 +1,192 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code InputStreamPublisher} is a publisher that adapts a blocking input stream to the
+ * asynchronous read API of {@link Storage}. The stream is only read when the subscriber has
+ * signalled demand, so a slow subscriber never holds a thread while it is waiting.
+ */
+public class InputStreamPublisher implements Flow.Publisher<ByteBuffer> {
+
+  private static final int BUFFER_SIZE = 16384;
+
+  private final StreamSupplier supplier;
+  private final Executor executor;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  /**
+   * Creates a new instance of {@code InputStreamPublisher}.
+   *
+   * @param supplier the supplier that opens the input stream.
+   * @param executor the executor used to perform the blocking reads.
+   */
+  public InputStreamPublisher(StreamSupplier supplier, Executor executor) {
+    this.supplier = supplier;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    if (subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new StreamSubscription(subscriber));
+    } else {
+      subscriber.onSubscribe(new StreamSubscription(null));
+      subscriber.onError(new IllegalStateException("The publisher already has a subscriber"));
+    }
+  }
+
+  /**
+   * {@code StreamSupplier} opens the input stream that is published.
+   */
+  @FunctionalInterface
+  public interface StreamSupplier {
+
+    /**
+     * Opens the input stream.
+     *
+     * @return the input stream.
+     * @throws IOException if the stream could not be opened.
+     */
+    InputStream open() throws IOException;
+  }
+
+  private final class StreamSubscription implements Flow.Subscription, Runnable {
+
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private boolean done;
+    private InputStream input;
+
+    StreamSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.subscriber = subscriber;
+      this.done = subscriber == null;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0L) {
+        error = new IllegalArgumentException("Demand must be positive");
+      } else {
+        demand.getAndAccumulate(n, (a, b) -> a + b < 0L ? Long.MAX_VALUE : a + b);
+      }
+
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+
+      do {
+        drain();
+        missed = work.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    /**
+     * Schedules the subscription to be drained if it is not already running.
+     */
+    private void schedule() {
+      if (work.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    /**
+     * Publishes buffers while there is outstanding demand.
+     */
+    private void drain() {
+      while (!done) {
+        if (cancelled) {
+          done = true;
+          closeInput();
+          return;
+        }
+
+        if (error != null) {
+          done = true;
+          closeInput();
+          subscriber.onError(error);
+          return;
+        }
+
+        if (demand.get() == 0L) {
+          return;
+        }
+
+        try {
+          if (input == null) {
+            input = supplier.open();
+          }
+
+          byte[] buffer = new byte[BUFFER_SIZE];
+          int len = input.read(buffer);
+
+          if (len < 0) {
+            done = true;
+            closeInput();
+            subscriber.onComplete();
+            return;
+          }
+
+          demand.decrementAndGet();
+          subscriber.onNext(ByteBuffer.wrap(buffer, 0, len));
+        } catch (Throwable e) {
+          done = true;
+          closeInput();
+          subscriber.onError(e);
+          return;
+        }
+      }
+    }
+
+    /**
+     * Closes the input stream, ignoring any errors.
+     */
+    private void closeInput() {
+      if (input != null) {
+        try {
+          input.close();
+        } catch (IOException ignore) {
+        }
+
+        input = null;
+      }
+    }
+  }
+}
@@ -20,9 +20,17 @@ package com.jshobe.maven.storage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -30,32 +38,86 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * {@code LocalStorage} is an implementation of {@link Storage} that stores artifacts in a local
- * file system.
+ * file system. Files are written to a temporary file in the same directory and then atomically
+ * renamed, so readers never see a partially written file and a crash never leaves a truncated one.
+ * Optionally, identical files are deduplicated by storing their content once in a
+ * {@link ContentStore} and linking to it.
  */
+@Slf4j
 public class LocalStorage implements Storage {
 
+  static final String TEMP_PREFIX = ".upload-";
+  private static final long TRANSFER_SIZE = 8L * 1024L * 1024L;
+
   private final Path root;
   private final Set<String> repositories;
+  private final Durability durability;
+  private final GroupCommit groupCommit;
+  private final DirectoryWatcher watcher;
+  private final ContentStore contentStore;
 
   /**
-   * Creates a new instance of {@code LocalStorage}.
+   * Creates a new instance of {@code LocalStorage} that does not synchronize written files.
    *
    * @param root         the path to the directory where the artifacts will be stored.
    * @param repositories the repository names.
    * @throws IOException if an I/O error prevented the storage from being initialized.
    */
   public LocalStorage(Path root, Set<String> repositories) throws IOException {
+    this(root, repositories, Durability.NONE, false, false);
+  }
+
+  /**
+   * Creates a new instance of {@code LocalStorage}.
+   *
+   * @param root         the path to the directory where the artifacts will be stored.
+   * @param repositories the repository names.
+   * @param durability   the policy used to make written files durable.
+   * @param watch        {@code true} to watch the repository directories for changes made by
+   *                     other processes and notify the storage listeners. If the directories
+   *                     cannot be watched, for example because the limit of watches has been
+   *                     reached, a warning is logged and cached data is only invalidated when its
+   *                     time to live expires.
+   * @param dedup        {@code true} to store identical files once, as hard links to a shared
+   *                     content-addressed blob.
+   * @throws IOException if an I/O error prevented the storage from being initialized.
+   */
+  public LocalStorage(Path root, Set<String> repositories, Durability durability, boolean watch,
+      boolean dedup) throws IOException {
     this.root = root.toAbsolutePath();
     this.repositories = repositories;
+    this.durability = durability;
+    this.groupCommit = durability == Durability.GROUP ? new GroupCommit() : null;
 
     for (String repository : repositories) {
       Path path = root.resolve(repository);
       Files.createDirectories(path);
     }
+
+    this.watcher = watch ? createWatcher(this.root, repositories) : null;
+    this.contentStore = dedup ? new ContentStore(this.root) : null;
+  }
+
+  /**
+   * Creates the watcher of the repository directories. A storage directory that is too large to be
+   * watched does not prevent the server from starting.
+   *
+   * @param root         the path to the storage directory.
+   * @param repositories the repository names.
+   * @return the watcher or {@code null} if the directories could not be watched.
+   */
+  private static DirectoryWatcher createWatcher(Path root, Set<String> repositories) {
+    try {
+      return new DirectoryWatcher(root, repositories, TEMP_PREFIX);
+    } catch (IOException e) {
+      log.warn("Failed to watch {} for changes, falling back to expiring cached data", root, e);
+      return null;
+    }
   }
 
   @Override
@@ -72,9 +134,18 @@ public class LocalStorage implements Storage {
           "The directory at '" + path + "' in repository '" + repository + "' does not exist");
     }
 
-    return Files.list(directoryPath)
-        .map(this::createStorageFile)
-        .collect(Collectors.toList());
+    List<StorageFile> files = new ArrayList<>();
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directoryPath)) {
+      for (Path file : stream) {
+        if (!file.getFileName().toString().startsWith(TEMP_PREFIX)) {
+          readAttributes(file).ifPresent(attributes ->
+              files.add(createStorageFile(file, attributes)));
+        }
+      }
+    }
+
+    return files;
   }
 
   @Override
@@ -83,8 +154,9 @@ public class LocalStorage implements Storage {
   }
 
   @Override
-  public Optional<StorageFile> getFile(String repository, String path) {
-    return Optional.ofNullable(getPath(repository, path)).map(this::createStorageFile);
+  public Optional<StorageFile> getFile(String repository, String path) throws IOException {
+    Path filePath = getPath(repository, path, true);
+    return readAttributes(filePath).map(attributes -> createStorageFile(filePath, attributes));
   }
 
   @Override
@@ -104,8 +176,63 @@ public class LocalStorage implements Storage {
     return Files.newInputStream(filePath);
   }
 
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    Path filePath = getPath(repository, path);
+
+    if (filePath == null) {
+      throw new IllegalArgumentException(
+          "The directory at '" + path + "' in repository '" + repository + "' does not exist");
+    }
+
+    if (Files.isDirectory(filePath)) {
+      throw new IllegalArgumentException(
+          "The path '" + path + "' in repository '" + repository + "' is a directory");
+    }
+
+    FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+
+    try {
+      channel.position(offset);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+
+    return new RangeInputStream(Channels.newInputStream(channel), length);
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    Path filePath = getPath(repository, path);
+
+    if (filePath == null) {
+      throw new IllegalArgumentException(
+          "The directory at '" + path + "' in repository '" + repository + "' does not exist");
+    }
+
+    if (Files.isDirectory(filePath)) {
+      throw new IllegalArgumentException(
+          "The path '" + path + "' in repository '" + repository + "' is a directory");
+    }
+
+    return FileChannel.open(filePath, StandardOpenOption.READ);
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) {
+    return Optional.ofNullable(getPath(repository, path)).filter(Files::isRegularFile);
+  }
+
   @Override
   public void writeFile(String repository, String path, InputStream input) throws IOException {
+    writeFile(repository, path, Channels.newChannel(input));
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel input)
+      throws IOException {
     Path filePath = getPath(repository, path, true);
     assert filePath != null;
 
@@ -126,7 +253,46 @@ public class LocalStorage implements Storage {
               "' is not a directory");
     }
 
-    Files.copy(input, filePath, StandardCopyOption.REPLACE_EXISTING);
+    Path tempPath = filePath.resolveSibling(TEMP_PREFIX + UUID.randomUUID());
+    Path blobDirectory = null;
+
+    try {
+      MessageDigest digest = null;
+      ReadableByteChannel source = input;
+
+      if (contentStore != null) {
+        digest = ContentStore.createDigest();
+        source = new DigestChannel(input, digest);
+      }
+
+      try (FileChannel channel = FileChannel.open(
+          tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        long position = 0L;
+        long count;
+
+        while ((count = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0L) {
+          position += count;
+        }
+
+        if (durability != Durability.NONE) {
+          channel.force(false);
+        }
+      }
+
+      if (digest == null) {
+        Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE);
+      } else {
+        blobDirectory = contentStore.publish(tempPath, filePath, digest.digest());
+      }
+    } finally {
+      Files.deleteIfExists(tempPath);
+    }
+
+    sync(filePath.getParent());
+
+    if (blobDirectory != null) {
+      sync(blobDirectory);
+    }
   }
 
   @Override
@@ -140,6 +306,43 @@ public class LocalStorage implements Storage {
     Files.createDirectories(directoryPath);
   }
 
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    if (watcher != null) {
+      watcher.addListener(listener);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (watcher != null) {
+      watcher.close();
+    }
+
+    if (groupCommit != null) {
+      groupCommit.close();
+    }
+
+    if (contentStore != null) {
+      contentStore.close();
+    }
+  }
+
+  /**
+   * Synchronizes a directory into which a file has been renamed, according to the durability
+   * policy.
+   *
+   * @param directory the path to the directory.
+   * @throws IOException if the directory could not be synchronized.
+   */
+  private void sync(Path directory) throws IOException {
+    if (durability == Durability.FILE) {
+      GroupCommit.syncDirectory(directory);
+    } else if (durability == Durability.GROUP) {
+      groupCommit.sync(directory);
+    }
+  }
+
   /**
    * Gets the {@link Path} for a specified repository and file path.
    *
@@ -174,25 +377,59 @@ public class LocalStorage implements Storage {
   }
 
   /**
-   * Creates a {@link StorageFile} instance for a file path.
+   * Reads the attributes of a file with a single call to the file system.
    *
    * @param path the file path.
+   * @return the file attributes or an empty optional if the file does not exist.
+   * @throws IOException if the attributes could not be read.
+   */
+  private Optional<BasicFileAttributes> readAttributes(Path path) throws IOException {
+    try {
+      return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Creates a {@link StorageFile} instance for a file path.
+   *
+   * @param path       the file path.
+   * @param attributes the file attributes.
    * @return the storage file.
    */
-  private StorageFile createStorageFile(Path path) {
+  private StorageFile createStorageFile(Path path, BasicFileAttributes attributes) {
     Path relativePath = root.relativize(path);
     Path repositoryPath = relativePath.getName(0);
     Path filePath = repositoryPath.relativize(relativePath);
 
     StorageFile file = new StorageFile();
-    file.setDirectory(Files.isDirectory(path));
+    file.setDirectory(attributes.isDirectory());
     file.setRepository(repositoryPath.getFileName().toString());
     file.setPath(toString(filePath));
-    file.setSize(file.isDirectory() ? 0L : path.toFile().length());
-    file.setCreated(getDateCreated(path));
+    file.setSize(file.isDirectory() ? 0L : attributes.size());
+    file.setCreated(getDateCreated(attributes));
+
+    // links to a shared blob share its modification time, so tell the content apart by blob
+    if (contentStore != null && attributes.isRegularFile() && attributes.fileKey() != null) {
+      file.setEtag(getBlobTag(attributes));
+    }
+
     return file;
   }
 
+  /**
+   * Gets an entity tag that identifies the blob a file is linked to. Each blob is a distinct file,
+   * so its file key changes whenever the file is published with different content.
+   *
+   * @param attributes the file attributes.
+   * @return the entity tag.
+   */
+  private static String getBlobTag(BasicFileAttributes attributes) {
+    return Long.toHexString(attributes.size()) + "-" +
+        attributes.fileKey().toString().replaceAll("[^0-9A-Za-z]+", "");
+  }
+
   /**
    * Converts a path to a string.
    *
@@ -216,11 +453,35 @@ public class LocalStorage implements Storage {
   /**
    * Gets the date and time at which a file was created.
    *
-   * @param path the path to the file.
+   * @param attributes the file attributes.
    * @return the creation date and time.
    */
-  private LocalDateTime getDateCreated(Path path) {
-    Instant created = Instant.ofEpochMilli(path.toFile().lastModified());
+  private LocalDateTime getDateCreated(BasicFileAttributes attributes) {
+    Instant created = Instant.ofEpochMilli(attributes.lastModifiedTime().toMillis());
     return LocalDateTime.ofInstant(created, ZoneOffset.systemDefault());
   }
+
+  /**
+   * {@code Durability} is the policy used to make written files durable.
+   */
+  public enum Durability {
+
+    /**
+     * Written files are not synchronized, so a crash may lose recently written files. Files are
+     * still published atomically.
+     */
+    NONE,
+
+    /**
+     * The data of each written file is synchronized before it is published, and its directory is
+     * synchronized after it is published.
+     */
+    FILE,
+
+    /**
+     * The data of each written file is synchronized before it is published, and the directory
+     * synchronizations of concurrent writes are batched.
+     */
+    GROUP
+  }
 }
@@ -0,0 +1,192 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+/**
+ * {@code LockingStorage} is an implementation of {@link Storage} that wraps another storage
+ * instance and serializes the writes to each file. A checksum file is locked together with the file
+ * it belongs to, and the lock is held until the wrapped storage has finished the write, including
+ * any checksum files that it generates, so concurrent uploads of the same file never leave the file
+ * from one upload with the checksum files of another. Writes of metadata files are also serialized
+ * with the other writes of metadata in the same directory. Writes to different files proceed
+ * concurrently, and reads never take locks. An asynchronous write waits for its lock without
+ * holding a thread, and does not start reading its body until the lock is granted.
+ */
+public class LockingStorage implements Storage {
+
+  private static final String METADATA_FILE = "maven-metadata.xml";
+  private static final String[] CHECKSUM_EXTENSIONS = {".md5", ".sha1", ".sha256", ".sha512"};
+
+  private final Storage storage;
+  private final WriteLocks locks;
+
+  /**
+   * Creates a new instance of {@code LockingStorage}.
+   *
+   * @param storage the wrapped storage.
+   */
+  public LockingStorage(Storage storage) {
+    this.storage = storage;
+    this.locks = new WriteLocks();
+  }
+
+  @Override
+  public List<String> getRepositories() throws IOException {
+    return storage.getRepositories();
+  }
+
+  @Override
+  public List<StorageFile> listDirectory(String repository, String path) throws IOException {
+    return storage.listDirectory(repository, path);
+  }
+
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path)
+      throws IOException {
+    return storage.streamDirectory(repository, path);
+  }
+
+  @Override
+  public boolean exists(String repository, String path) throws IOException {
+    return storage.exists(repository, path);
+  }
+
+  @Override
+  public Optional<StorageFile> getFile(String repository, String path) throws IOException {
+    return storage.getFile(repository, path);
+  }
+
+  @Override
+  public boolean isMetadataCached() {
+    return storage.isMetadataCached();
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path) throws IOException {
+    return storage.readFile(repository, path);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    return storage.readFile(repository, path, offset, length);
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    return storage.readFileAsync(repository, path, executor);
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    return storage.openChannel(repository, path);
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) throws IOException {
+    return storage.getLocalPath(repository, path);
+  }
+
+  @Override
+  public void writeFile(String repository, String path, InputStream input) throws IOException {
+    try (WriteLocks.Handle ignored = locks.lock(getLockKeys(repository, path))) {
+      storage.writeFile(repository, path, input);
+    }
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    try (WriteLocks.Handle ignored = locks.lock(getLockKeys(repository, path))) {
+      storage.writeFile(repository, path, channel);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    return locks.lockAsync(getLockKeys(repository, path)).thenCompose(handle -> {
+      try {
+        return storage.writeFileAsync(repository, path, length, body, executor)
+            .whenComplete((result, error) -> handle.close());
+      } catch (RuntimeException e) {
+        handle.close();
+        throw e;
+      }
+    });
+  }
+
+  @Override
+  public void createDirectory(String repository, String path) throws IOException {
+    storage.createDirectory(repository, path);
+  }
+
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    storage.addStorageListener(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    storage.close();
+  }
+
+  /**
+   * Gets the keys that are locked to write a file. A checksum file is locked with the file it
+   * belongs to, and a metadata file is also locked with its directory.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the lock keys.
+   */
+  private static String[] getLockKeys(String repository, String path) {
+    String filePath = path;
+
+    for (String extension : CHECKSUM_EXTENSIONS) {
+      if (path.endsWith(extension)) {
+        filePath = path.substring(0, path.length() - extension.length());
+        break;
+      }
+    }
+
+    String fileKey = repository + '/' + filePath;
+
+    if (filePath.endsWith(METADATA_FILE) || filePath.contains(METADATA_FILE + '.')) {
+      int index = filePath.lastIndexOf('/');
+      String directory = index < 0 ? "" : filePath.substring(0, index);
+      return new String[] {repository + '/' + directory + '/', fileKey};
+    }
+
+    return new String[] {fileKey};
+  }
+}
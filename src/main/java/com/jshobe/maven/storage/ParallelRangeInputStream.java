@@ -0,0 +1,258 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import software.amazon.awssdk.core.ResponseInputStream;
+
+/**
+ * {@code ParallelRangeInputStream} reads a large remote file as a sequence of ranges that are
+ * fetched concurrently and read back in order. The first part is read from a response that is
+ * already open for the whole file, which is aborted once the part has been read, while the
+ * following parts are fetched in the background. At most a fixed number of parts are fetched or
+ * held at a time for each file, and the buffers that hold them come from a pool shared by all
+ * downloads, so memory use is bounded regardless of the file size or the number of downloads. When
+ * the pool is exhausted, the rest of the file is read with a single request instead of waiting for
+ * a buffer.
+ */
+final class ParallelRangeInputStream extends InputStream {
+
+  private final RangeReader reader;
+  private final BufferPool buffers;
+  private final Executor executor;
+  private final long length;
+  private final int parallelism;
+  private final Deque<CompletableFuture<ByteBuffer>> parts;
+  private ResponseInputStream<?> first;
+  private long firstRemaining;
+  private InputStream rest;
+  private long nextOffset;
+  private ByteBuffer current;
+
+  /**
+   * Creates a new instance of {@code ParallelRangeInputStream}.
+   *
+   * @param first       the open response for the whole file.
+   * @param length      the total length of the file.
+   * @param parallelism the maximum number of parts that are fetched or held at a time.
+   * @param buffers     the pool of part buffers, the size of which is the part size.
+   * @param reader      the reader that fetches a range of the file.
+   * @param executor    the executor on which the ranges are fetched.
+   */
+  ParallelRangeInputStream(ResponseInputStream<?> first, long length, int parallelism,
+      BufferPool buffers, RangeReader reader, Executor executor) {
+    this.first = first;
+    this.firstRemaining = Math.min(buffers.getBufferSize(), length);
+    this.nextOffset = firstRemaining;
+    this.length = length;
+    this.parallelism = parallelism;
+    this.buffers = buffers;
+    this.reader = reader;
+    this.executor = executor;
+    this.parts = new ArrayDeque<>();
+    fetchMore();
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    if (first != null) {
+      if (firstRemaining > 0L) {
+        int count = first.read(b, off, (int) Math.min(len, firstRemaining));
+
+        if (count < 0) {
+          throw new IOException("Unexpected end of file");
+        }
+
+        firstRemaining -= count;
+        return count;
+      }
+
+      closeFirst();
+    }
+
+    if (rest != null) {
+      return rest.read(b, off, len);
+    }
+
+    while (current == null || !current.hasRemaining()) {
+      if (current != null) {
+        buffers.release(current);
+        current = null;
+      }
+
+      if (parts.isEmpty()) {
+        if (nextOffset >= length) {
+          return -1;
+        }
+
+        rest = reader.open(nextOffset);
+        nextOffset = length;
+        return rest.read(b, off, len);
+      }
+
+      current = join(parts.removeFirst());
+      fetchMore();
+    }
+
+    int count = Math.min(len, current.remaining());
+    current.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // parts that are still being fetched return their buffers when they finish
+    parts.forEach(part -> part.thenAccept(buffers::release));
+    parts.clear();
+
+    if (current != null) {
+      buffers.release(current);
+      current = null;
+    }
+
+    try {
+      if (first != null) {
+        closeFirst();
+      }
+    } finally {
+      if (rest != null) {
+        rest.close();
+        rest = null;
+      }
+    }
+  }
+
+  /**
+   * Aborts and closes the response for the whole file, so that the rest of it is not transferred.
+   *
+   * @throws IOException if the response could not be closed.
+   */
+  private void closeFirst() throws IOException {
+    try {
+      first.abort();
+      first.close();
+    } finally {
+      first = null;
+    }
+  }
+
+  /**
+   * Starts fetching the following parts in the background, for as long as the parallelism allows
+   * and buffers are available.
+   */
+  private void fetchMore() {
+    while (parts.size() < parallelism && nextOffset < length) {
+      ByteBuffer buffer = buffers.tryAcquire();
+
+      if (buffer == null) {
+        return;
+      }
+
+      long offset = nextOffset;
+      buffer.limit((int) Math.min(buffer.capacity(), length - offset));
+
+      try {
+        parts.addLast(CompletableFuture.supplyAsync(() -> {
+          try {
+            reader.read(offset, buffer);
+            buffer.flip();
+            return buffer;
+          } catch (IOException e) {
+            buffers.release(buffer);
+            throw new CompletionException(e);
+          } catch (RuntimeException e) {
+            buffers.release(buffer);
+            throw e;
+          }
+        }, executor));
+      } catch (RejectedExecutionException e) {
+        buffers.release(buffer);
+        return;
+      }
+
+      nextOffset = offset + buffer.limit();
+    }
+  }
+
+  /**
+   * Waits for a part to be fetched.
+   *
+   * @param part the future content of the part.
+   * @return the content of the part.
+   * @throws IOException if the part could not be fetched.
+   */
+  private static ByteBuffer join(CompletableFuture<ByteBuffer> part) throws IOException {
+    try {
+      return part.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw new IOException("Failed to read part", e.getCause());
+    }
+  }
+
+  /**
+   * {@code RangeReader} fetches ranges of a remote file.
+   */
+  interface RangeReader {
+
+    /**
+     * Reads a range of the file into the remaining space of a buffer.
+     *
+     * @param offset the offset of the first byte.
+     * @param buffer the buffer, which must be filled completely.
+     * @throws IOException if an I/O error occurs.
+     */
+    void read(long offset, ByteBuffer buffer) throws IOException;
+
+    /**
+     * Opens a stream of the file from an offset to its end.
+     *
+     * @param offset the offset of the first byte.
+     * @return the input stream.
+     * @throws IOException if an I/O error occurs.
+     */
+    InputStream open(long offset) throws IOException;
+  }
+}
@@ -31,7 +31,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
@@ -45,6 +48,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -76,6 +82,7 @@ public class ProxyStorage implements Storage {
     this.mapper = new XmlMapper();
     this.dateFormat = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
     this.metadata = cache.createCache("metadata", 100L, 1L, TimeUnit.HOURS, this::buildMetadata);
+    storage.addStorageListener(this::invalidate);
   }
 
   @Override
@@ -84,6 +91,18 @@ public class ProxyStorage implements Storage {
         .collect(Collectors.toList());
   }
 
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path)
+      throws IOException {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied == null || proxied.isEmpty()) {
+      return storage.streamDirectory(repository, path);
+    }
+
+    return listDirectory(repository, path).stream();
+  }
+
   @Override
   public List<StorageFile> listDirectory(String repository, String path) throws IOException {
     Set<String> proxied = proxies.get(repository);
@@ -161,6 +180,7 @@ public class ProxyStorage implements Storage {
         file.setSize(metadata.getSha512().length);
       } else {
         file.setSize(metadata.size);
+        file.setSha1(new String(metadata.getSha1(), StandardCharsets.US_ASCII));
       }
 
       return Optional.of(file);
@@ -177,6 +197,11 @@ public class ProxyStorage implements Storage {
     return Optional.empty();
   }
 
+  @Override
+  public boolean isMetadataCached() {
+    return storage.isMetadataCached();
+  }
+
   @Override
   public InputStream readFile(String repository, String path) throws IOException {
     Set<String> proxied = proxies.get(repository);
@@ -213,6 +238,100 @@ public class ProxyStorage implements Storage {
         "The directory at '" + path + "' in repository '" + repository + "' does not exist");
   }
 
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied == null || proxied.isEmpty()) {
+      return storage.readFile(repository, path, offset, length);
+    }
+
+    if (isMetadata(path)) {
+      return Storage.super.readFile(repository, path, offset, length);
+    }
+
+    for (String repo : proxied) {
+      Optional<StorageFile> file = storage.getFile(repo, path);
+
+      if (file.isPresent()) {
+        return storage.readFile(repo, path, offset, length);
+      }
+    }
+
+    throw new IllegalArgumentException(
+        "The directory at '" + path + "' in repository '" + repository + "' does not exist");
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied == null || proxied.isEmpty()) {
+      return storage.readFileAsync(repository, path, executor);
+    }
+
+    if (!isMetadata(path)) {
+      for (String repo : proxied) {
+        Optional<StorageFile> file = storage.getFile(repo, path);
+
+        if (file.isPresent()) {
+          return storage.readFileAsync(repo, path, executor);
+        }
+      }
+    }
+
+    return Storage.super.readFileAsync(repository, path, executor);
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied == null || proxied.isEmpty()) {
+      return storage.openChannel(repository, path);
+    }
+
+    if (isMetadata(path)) {
+      return Storage.super.openChannel(repository, path);
+    }
+
+    for (String repo : proxied) {
+      Optional<StorageFile> file = storage.getFile(repo, path);
+
+      if (file.isPresent()) {
+        return storage.openChannel(repo, path);
+      }
+    }
+
+    throw new IllegalArgumentException(
+        "The directory at '" + path + "' in repository '" + repository + "' does not exist");
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) throws IOException {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied == null || proxied.isEmpty()) {
+      return storage.getLocalPath(repository, path);
+    }
+
+    if (isMetadata(path)) {
+      return Optional.empty();
+    }
+
+    for (String repo : proxied) {
+      Optional<StorageFile> file = storage.getFile(repo, path);
+
+      if (file.isPresent()) {
+        return storage.getLocalPath(repo, path);
+      }
+    }
+
+    return Optional.empty();
+  }
+
   @Override
   public void writeFile(String repository, String path, InputStream input) throws IOException {
     Set<String> proxied = proxies.get(repository);
@@ -222,6 +341,34 @@ public class ProxyStorage implements Storage {
     }
 
     storage.writeFile(repository, path, input);
+    invalidate(repository, path);
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied != null && !proxied.isEmpty()) {
+      throw new IllegalArgumentException("The repository '" + repository + "' is read-only");
+    }
+
+    storage.writeFile(repository, path, channel);
+    invalidate(repository, path);
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    Set<String> proxied = proxies.get(repository);
+
+    if (proxied != null && !proxied.isEmpty()) {
+      return CompletableFuture.failedFuture(new IllegalArgumentException(
+          "The repository '" + repository + "' is read-only"));
+    }
+
+    return storage.writeFileAsync(repository, path, length, body, executor)
+        .thenRun(() -> invalidate(repository, path));
   }
 
   @Override
@@ -235,6 +382,38 @@ public class ProxyStorage implements Storage {
     storage.createDirectory(repository, path);
   }
 
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    storage.addStorageListener(listener);
+  }
+
+  @Override
+  public void close() throws IOException {
+    storage.close();
+  }
+
+  /**
+   * Invalidates the merged metadata of the proxy repositories when a metadata file in one of the
+   * proxied repositories changes.
+   *
+   * @param repository the name of the physical repository.
+   * @param path       the path to the changed file.
+   */
+  private void invalidate(String repository, String path) {
+    if (!isMetadata(path)) {
+      return;
+    }
+
+    int index = path.indexOf("/maven-metadata.xml");
+    String metadataPath = path.substring(0, index + "/maven-metadata.xml".length());
+
+    for (Map.Entry<String, Set<String>> proxy : proxies.entrySet()) {
+      if (proxy.getValue().contains(repository)) {
+        metadata.invalidate(proxy.getKey(), metadataPath);
+      }
+    }
+  }
+
   /**
    * Gets all proxied files at the specified path.
    *
@@ -0,0 +1,142 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@code PublisherInputStream} is an input stream that reads the buffers from a publisher. One
+ * buffer is requested at a time, and the next buffer is not requested until the previous one has
+ * been read, so the publisher is never asked for more data than the reader consumes. Closing the
+ * stream before the end is reached cancels the subscription.
+ */
+final class PublisherInputStream extends InputStream implements Flow.Subscriber<ByteBuffer> {
+
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private final BlockingQueue<ByteBuffer> buffers;
+  private volatile Flow.Subscription subscription;
+  private volatile Throwable error;
+  private ByteBuffer current;
+
+  /**
+   * Creates a new instance of {@code PublisherInputStream}.
+   */
+  PublisherInputStream() {
+    buffers = new LinkedBlockingQueue<>();
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(1L);
+  }
+
+  @Override
+  public void onNext(ByteBuffer buffer) {
+    buffers.add(buffer);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    error = throwable;
+    buffers.add(END);
+  }
+
+  @Override
+  public void onComplete() {
+    buffers.add(END);
+  }
+
+  @Override
+  public int read() throws IOException {
+    ByteBuffer buffer = next();
+    return buffer == null ? -1 : buffer.get() & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    ByteBuffer buffer = next();
+
+    if (buffer == null) {
+      return -1;
+    }
+
+    int count = Math.min(len, buffer.remaining());
+    buffer.get(b, off, count);
+    return count;
+  }
+
+  @Override
+  public int available() {
+    ByteBuffer buffer = current;
+    return buffer == null ? 0 : buffer.remaining();
+  }
+
+  @Override
+  public void close() {
+    Flow.Subscription active = subscription;
+
+    if (current != END && active != null) {
+      current = END;
+      active.cancel();
+    }
+  }
+
+  /**
+   * Gets the buffer from which the next bytes are read, waiting for the publisher if necessary.
+   *
+   * @return the buffer or {@code null} if the end of the stream has been reached.
+   * @throws IOException if the publisher failed or the thread was interrupted.
+   */
+  private ByteBuffer next() throws IOException {
+    while (current == null || !current.hasRemaining()) {
+      if (current == END) {
+        if (error != null) {
+          throw new IOException("Failed to read the published data", error);
+        }
+
+        return null;
+      }
+
+      if (current != null) {
+        subscription.request(1L);
+      }
+
+      try {
+        current = buffers.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for data");
+      }
+    }
+
+    return current;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@code RangeInputStream} is an input stream that reads at most a fixed number of bytes from the
+ * wrapped stream.
+ */
+class RangeInputStream extends FilterInputStream {
+
+  private long remaining;
+
+  /**
+   * Creates a new instance of {@code RangeInputStream}.
+   *
+   * @param in     the wrapped input stream.
+   * @param length the maximum number of bytes to read.
+   */
+  RangeInputStream(InputStream in, long length) {
+    super(in);
+    this.remaining = length;
+  }
+
+  /**
+   * Skips the specified number of bytes in an input stream.
+   *
+   * @param input the input stream.
+   * @param count the number of bytes to skip.
+   * @throws IOException if an I/O error occurs or the end of the stream is reached.
+   */
+  static void skipFully(InputStream input, long count) throws IOException {
+    while (count > 0) {
+      long skipped = input.skip(count);
+
+      if (skipped <= 0) {
+        if (input.read() < 0) {
+          throw new IOException("Unexpected end of stream");
+        }
+
+        skipped = 1;
+      }
+
+      count -= skipped;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+
+    int result = super.read();
+
+    if (result >= 0) {
+      remaining--;
+    }
+
+    return result;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (remaining <= 0) {
+      return -1;
+    }
+
+    int result = super.read(b, off, (int) Math.min(len, remaining));
+
+    if (result > 0) {
+      remaining -= result;
+    }
+
+    return result;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long result = super.skip(Math.min(n, remaining));
+
+    if (result > 0) {
+      remaining -= result;
+    }
+
+    return result;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(super.available(), remaining);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+}
@@ -0,0 +1,494 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * {@code S3AsyncStorage} is an implementation of {@link Storage} that stores artifacts in an AWS S3
+ * bucket using the non-blocking S3 client. Downloads published by
+ * {@link #readFileAsync(String, String, Executor)} are streamed from the S3 connection as the
+ * subscriber requests them, and uploads written with
+ * {@link #writeFileAsync(String, String, long, Flow.Publisher, Executor)} are streamed to S3 as
+ * the request body arrives, so transfers in progress do not hold a thread.
+ *
+ * <p>The blocking methods wait for the non-blocking requests to complete. Uploads with an unknown
+ * length, which S3 does not accept as a stream, are spooled to a temporary file first.
+ */
+public class S3AsyncStorage implements Storage {
+
+  private final S3AsyncClient client;
+  private final String bucket;
+  private final Set<String> repositories;
+
+  /**
+   * Creates a new instance of {@code S3AsyncStorage}. The client is shared by all requests and is
+   * closed when the storage is closed.
+   *
+   * @param client       the S3 client.
+   * @param bucket       the name of the S3 bucket.
+   * @param repositories the repository names.
+   * @throws IOException if the repositories could not be created.
+   */
+  public S3AsyncStorage(S3AsyncClient client, String bucket, Set<String> repositories)
+      throws IOException {
+    this.client = client;
+    this.bucket = bucket;
+    this.repositories = repositories;
+
+    ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+        .bucket(bucket)
+        .delimiter("/")
+        .build();
+    Set<String> existing = join(client.listObjectsV2(listRequest)).commonPrefixes().stream()
+        .map(CommonPrefix::prefix)
+        .map(s -> s.substring(0, s.length() - 1))
+        .collect(Collectors.toSet());
+
+    for (String repository : repositories) {
+      if (!existing.contains(repository)) {
+        createDirectory(repository, null);
+      }
+    }
+  }
+
+  @Override
+  public List<String> getRepositories() {
+    return new ArrayList<>(repositories);
+  }
+
+  @Override
+  public List<StorageFile> listDirectory(String repository, String path) throws IOException {
+    String prefix = S3Storage.getKey(repository, path) + "/";
+    ListObjectsV2Request request = ListObjectsV2Request.builder()
+        .bucket(bucket)
+        .prefix(prefix)
+        .delimiter("/")
+        .build();
+    List<StorageFile> files = new ArrayList<>();
+
+    join(client.listObjectsV2Paginator(request).subscribe(page -> {
+      for (CommonPrefix common : page.commonPrefixes()) {
+        files.add(S3Storage.createStorageDirectory(repository, common.prefix()));
+      }
+
+      page.contents().stream()
+          .filter(o -> !prefix.equals(o.key()))
+          .forEach(o -> files.add(S3Storage.createStorageFile(repository, o)));
+    }));
+
+    return files;
+  }
+
+  @Override
+  public boolean exists(String repository, String path) throws IOException {
+    return getFile(repository, path).isPresent();
+  }
+
+  @Override
+  public Optional<StorageFile> getFile(String repository, String path) throws IOException {
+    String key = S3Storage.getKey(repository, path);
+
+    if (path != null && !path.isEmpty()) {
+      HeadObjectRequest request = HeadObjectRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .build();
+
+      try {
+        return Optional.of(
+            S3Storage.createStorageFile(repository, path, join(client.headObject(request))));
+      } catch (NoSuchKeyException e) {
+        // not a file, so check for a directory
+      } catch (S3Exception e) {
+        if (e.statusCode() != 404) {
+          throw e;
+        }
+      }
+    }
+
+    ListObjectsV2Request request = ListObjectsV2Request.builder()
+        .bucket(bucket)
+        .prefix(key + "/")
+        .maxKeys(1)
+        .build();
+
+    if (join(client.listObjectsV2(request)).keyCount() > 0) {
+      return Optional.of(S3Storage.createStorageDirectory(repository, key + "/"));
+    }
+
+    return Optional.empty();
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path) {
+    return readObject(repository, path, null);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length) {
+    return readObject(repository, path, "bytes=" + offset + "-" + (offset + length - 1));
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) {
+    return new ObjectPublisher(repository, path, null);
+  }
+
+  @Override
+  public void writeFile(String repository, String path, InputStream input) throws IOException {
+    writeFile(repository, path, Channels.newChannel(input));
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    Path temp = Files.createTempFile("maven", "tmp");
+
+    try {
+      try (FileChannel output = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        long position = 0L;
+        long count;
+
+        while ((count = output.transferFrom(channel, position, 8L * 1024L * 1024L)) > 0L) {
+          position += count;
+        }
+      }
+
+      PutObjectRequest request = PutObjectRequest.builder()
+          .bucket(bucket)
+          .key(S3Storage.getKey(repository, path))
+          .build();
+      join(client.putObject(request, AsyncRequestBody.fromFile(temp)));
+    } finally {
+      temp.toFile().delete();
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    if (length < 0L) {
+      return Storage.super.writeFileAsync(repository, path, length, body, executor);
+    }
+
+    PutObjectRequest request = PutObjectRequest.builder()
+        .bucket(bucket)
+        .key(S3Storage.getKey(repository, path))
+        .contentLength(length)
+        .build();
+    return client.putObject(request, new PublisherRequestBody(body, length))
+        .thenApply(response -> null);
+  }
+
+  @Override
+  public void createDirectory(String repository, String path) throws IOException {
+    PutObjectRequest request = PutObjectRequest.builder()
+        .bucket(bucket)
+        .key(S3Storage.getKey(repository, path) + "/")
+        .build();
+    join(client.putObject(request, AsyncRequestBody.empty()));
+  }
+
+  @Override
+  public void close() {
+    client.close();
+  }
+
+  /**
+   * Opens an input stream that reads an object as it is received.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param range      the HTTP range of the object to read or {@code null} to read all of it.
+   * @return the input stream.
+   */
+  private InputStream readObject(String repository, String path, String range) {
+    ObjectPublisher publisher = new ObjectPublisher(repository, path, range);
+    PublisherInputStream input = new PublisherInputStream();
+    publisher.subscribe(input);
+    return new VersionedInputStream(input, publisher::getVersion);
+  }
+
+  /**
+   * Waits for a request to complete.
+   *
+   * @param future the future result of the request.
+   * @param <T>    the type of the result.
+   * @return the result.
+   * @throws IOException if the request failed with a checked exception.
+   */
+  private static <T> T join(CompletableFuture<T> future) throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+
+      throw new IOException("S3 request failed", e.getCause());
+    }
+  }
+
+  /**
+   * {@code ObjectPublisher} publishes the content of an object. The object is requested when a
+   * subscriber subscribes, and its content is delivered as the subscriber requests it, so the
+   * connection is only read as fast as the subscriber consumes the buffers. The entity tag of the
+   * object is taken from the response, so it is the version of the content that was published.
+   */
+  private final class ObjectPublisher implements Flow.Publisher<ByteBuffer>, Versioned {
+
+    private final GetObjectRequest request;
+    private volatile String version;
+
+    /**
+     * Creates a new instance of {@code ObjectPublisher}.
+     *
+     * @param repository the name of the repository.
+     * @param path       the path to the file.
+     * @param range      the HTTP range of the object to read or {@code null} to read all of it.
+     */
+    ObjectPublisher(String repository, String path, String range) {
+      request = GetObjectRequest.builder()
+          .bucket(bucket)
+          .key(S3Storage.getKey(repository, path))
+          .range(range)
+          .build();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      StreamTransformer transformer =
+          new StreamTransformer(response -> version = S3Storage.getEtag(response.eTag()));
+      client.getObject(request, transformer).whenComplete((publisher, error) -> {
+        if (error == null) {
+          publisher.subscribe(new FlowSubscriber(subscriber));
+        } else {
+          subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+          });
+          subscriber.onError(
+              error instanceof CompletionException ? error.getCause() : error);
+        }
+      });
+    }
+
+    @Override
+    public String getVersion() {
+      return version;
+    }
+  }
+
+  /**
+   * {@code StreamTransformer} completes as soon as the response headers have been received,
+   * with the publisher of the response body, instead of waiting for the body to be received.
+   */
+  private static final class StreamTransformer
+      implements AsyncResponseTransformer<GetObjectResponse, SdkPublisher<ByteBuffer>> {
+
+    private final Consumer<GetObjectResponse> listener;
+    private volatile CompletableFuture<SdkPublisher<ByteBuffer>> future;
+
+    /**
+     * Creates a new instance of {@code StreamTransformer}.
+     *
+     * @param listener the listener that is passed the response when it is received.
+     */
+    StreamTransformer(Consumer<GetObjectResponse> listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public CompletableFuture<SdkPublisher<ByteBuffer>> prepare() {
+      future = new CompletableFuture<>();
+      return future;
+    }
+
+    @Override
+    public void onResponse(GetObjectResponse response) {
+      listener.accept(response);
+    }
+
+    @Override
+    public void onStream(SdkPublisher<ByteBuffer> publisher) {
+      future.complete(publisher);
+    }
+
+    @Override
+    public void exceptionOccurred(Throwable error) {
+      future.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * {@code FlowSubscriber} passes the signals of a Reactive Streams publisher to a
+   * {@link Flow.Subscriber}.
+   */
+  private static final class FlowSubscriber implements Subscriber<ByteBuffer> {
+
+    private final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+    /**
+     * Creates a new instance of {@code FlowSubscriber}.
+     *
+     * @param subscriber the subscriber to which the signals are passed.
+     */
+    FlowSubscriber(Flow.Subscriber<? super ByteBuffer> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      subscriber.onSubscribe(new Flow.Subscription() {
+
+        @Override
+        public void request(long n) {
+          subscription.request(n);
+        }
+
+        @Override
+        public void cancel() {
+          subscription.cancel();
+        }
+      });
+    }
+
+    @Override
+    public void onNext(ByteBuffer buffer) {
+      subscriber.onNext(buffer);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      subscriber.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      subscriber.onComplete();
+    }
+  }
+
+  /**
+   * {@code PublisherRequestBody} is a request body of a known length that is published by a
+   * {@link Flow.Publisher}.
+   */
+  private static final class PublisherRequestBody implements AsyncRequestBody {
+
+    private final Flow.Publisher<ByteBuffer> body;
+    private final long length;
+
+    /**
+     * Creates a new instance of {@code PublisherRequestBody}.
+     *
+     * @param body   the publisher of the body.
+     * @param length the length of the body in bytes.
+     */
+    PublisherRequestBody(Flow.Publisher<ByteBuffer> body, long length) {
+      this.body = body;
+      this.length = length;
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+      return Optional.of(length);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+      body.subscribe(new Flow.Subscriber<>() {
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          subscriber.onSubscribe(new Subscription() {
+
+            @Override
+            public void request(long n) {
+              subscription.request(n);
+            }
+
+            @Override
+            public void cancel() {
+              subscription.cancel();
+            }
+          });
+        }
+
+        @Override
+        public void onNext(ByteBuffer buffer) {
+          subscriber.onNext(buffer);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+          subscriber.onComplete();
+        }
+      });
+    }
+  }
+}
@@ -18,66 +18,165 @@
 
 package com.jshobe.maven.storage;
 
-import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
-import software.amazon.awssdk.services.s3.model.ListObjectsRequest;
-import software.amazon.awssdk.services.s3.model.ListObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 
 /**
  * {@code S3Storage} is an implementation of {@link Storage} that stores artifacts in an AWS S3
  * bucket.
+ *
+ * <p>Uploads are streamed to S3 without being spooled to disk. The body is read into buffers the
+ * size of a multipart part; a body that fits in a single buffer is sent with one {@code PutObject}
+ * request, and a larger body is sent as a multipart upload, with each part uploaded as soon as its
+ * buffer is filled while the next part is read. The buffers are shared by all uploads, which bounds
+ * the memory used for uploads. Small bodies, such as POMs and checksum files, are read into a small
+ * buffer of their own and never wait for a shared buffer, and an upload that cannot get a shared
+ * buffer within a bounded time fails instead of waiting behind slow clients indefinitely.
+ *
+ * <p>Downloads of large files may be split into ranges that are fetched over several connections at
+ * once. Each file is requested with a plain {@code GetObject}, and a file smaller than the download
+ * threshold is read from that response alone. For a larger file, only the first part is read from
+ * the response, while the following parts are fetched in parallel ranges that are read back in
+ * order. The ranges are only fetched if the object still has the entity tag of the first response,
+ * so an object that is overwritten during a download fails the download instead of mixing the bytes
+ * of two versions. The buffers that hold the ranges are shared by all downloads.
  */
 public class S3Storage implements Storage {
 
+  /**
+   * The minimum size of a multipart upload part allowed by S3.
+   */
+  public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+  private static final String SHA1_METADATA = "sha1";
+  private static final int SMALL_BODY_SIZE = 64 * 1024;
+  private static final long BUFFER_TIMEOUT_SECONDS = 30L;
+
+  private final S3Client client;
+  private final ExecutorService executor;
   private final String bucket;
   private final Set<String> repositories;
+  private final BufferPool buffers;
+  private final int parallelism;
+  private final long downloadThreshold;
+  private final int downloadParallelism;
+  private final BufferPool downloadBuffers;
 
   /**
-   * Creates a new instance of {@code S3Storage}.
+   * Creates a new instance of {@code S3Storage} with 8 MiB parts, uploading up to 4 parts of each
+   * file at a time using up to 16 buffers, and downloading files of at least 32 MiB in up to 4
+   * parallel 8 MiB parts using up to 16 buffers.
    *
+   * @param client       the S3 client.
    * @param bucket       the name of the S3 bucket.
    * @param repositories the repository names.
    */
-  public S3Storage(String bucket, Set<String> repositories) {
+  public S3Storage(S3Client client, String bucket, Set<String> repositories) {
+    this(client, bucket, repositories, 8 * 1024 * 1024, 4, 16, 32L * 1024L * 1024L,
+        8 * 1024 * 1024, 4, 16);
+  }
+
+  /**
+   * Creates a new instance of {@code S3Storage}. The client is shared by all requests and is closed
+   * when the storage is closed.
+   *
+   * @param client              the S3 client.
+   * @param bucket              the name of the S3 bucket.
+   * @param repositories        the repository names.
+   * @param partSize            the size in bytes of each part of a multipart upload, which is also
+   *                            the largest body that is sent with a single request.
+   * @param parallelism         the maximum number of parts of a file that are uploaded at the same
+   *                            time.
+   * @param maxBuffers          the maximum number of part buffers shared by all uploads.
+   * @param downloadThreshold   the minimum size in bytes of a file that is downloaded in parallel
+   *                            parts.
+   * @param downloadPartSize    the size in bytes of each part of a parallel download.
+   * @param downloadParallelism the maximum number of parts of a file that are downloaded or held
+   *                            in memory at the same time, or {@code 1} to download each file
+   *                            with a single request.
+   * @param downloadBuffers     the maximum number of part buffers shared by all downloads.
+   */
+  public S3Storage(S3Client client, String bucket, Set<String> repositories, int partSize,
+      int parallelism, int maxBuffers, long downloadThreshold, int downloadPartSize,
+      int downloadParallelism, int downloadBuffers) {
+    this.client = client;
+    this.downloadThreshold = downloadThreshold;
+    this.downloadParallelism = Math.max(downloadParallelism, 1);
+    this.downloadBuffers = new BufferPool(
+        Math.max(downloadPartSize, SMALL_BODY_SIZE), Math.max(downloadBuffers, 1));
+    this.buffers = new BufferPool(Math.max(partSize, MIN_PART_SIZE), Math.max(maxBuffers, 1));
+    this.parallelism = Math.max(parallelism, 1);
+    this.executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "s3-storage");
+      thread.setDaemon(true);
+      return thread;
+    });
     this.bucket = bucket;
     this.repositories = repositories;
 
-    try (S3Client client = createClient()) {
-      ListObjectsRequest listRequest = ListObjectsRequest.builder()
-          .bucket(bucket)
-          .delimiter("/")
-          .build();
-      Set<String> existing = client.listObjects(listRequest).commonPrefixes().stream()
-          .map(CommonPrefix::prefix)
-          .map(s -> s.substring(0, s.length() - 1))
-          .collect(Collectors.toSet());
-
-      for (String repository : repositories) {
-        if (!existing.contains(repository)) {
-          PutObjectRequest request = PutObjectRequest.builder()
-              .bucket(bucket)
-              .key(repository + "/")
-              .build();
-          client.putObject(request, RequestBody.empty());
-        }
+    ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+        .bucket(bucket)
+        .delimiter("/")
+        .build();
+    Set<String> existing = client.listObjectsV2(listRequest).commonPrefixes().stream()
+        .map(CommonPrefix::prefix)
+        .map(s -> s.substring(0, s.length() - 1))
+        .collect(Collectors.toSet());
+
+    for (String repository : repositories) {
+      if (!existing.contains(repository)) {
+        PutObjectRequest request = PutObjectRequest.builder()
+            .bucket(bucket)
+            .key(repository + "/")
+            .build();
+        client.putObject(request, RequestBody.empty());
       }
     }
   }
@@ -89,25 +188,32 @@ public class S3Storage implements Storage {
 
   @Override
   public List<StorageFile> listDirectory(String repository, String path) {
-    try (S3Client client = createClient()) {
-      String prefix = getKey(repository, path) + "/";
-      ListObjectsRequest request = ListObjectsRequest.builder()
-          .bucket(bucket)
-          .prefix(prefix)
-          .delimiter("/")
-          .build();
-      ListObjectsResponse response = client.listObjects(request);
-
-      return Stream.concat(
-          response.commonPrefixes().stream()
-              .map(p -> createStorageDirectory(repository, p.prefix())),
-          response.contents().stream()
-              .filter(o -> !prefix.equals(o.key()))
-              .map(o -> createStorageFile(repository, o)))
-          .collect(Collectors.toList());
+    try (Stream<StorageFile> files = streamDirectory(repository, path)) {
+      return files.collect(Collectors.toList());
     }
   }
 
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path) {
+    String prefix = getKey(repository, path) + "/";
+    ListObjectsV2Request request = ListObjectsV2Request.builder()
+        .bucket(bucket)
+        .prefix(prefix)
+        .delimiter("/")
+        .build();
+    ListingPages pages = new ListingPages(request);
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+        pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+        .onClose(pages::cancel)
+        .flatMap(page -> Stream.concat(
+            page.commonPrefixes().stream()
+                .map(p -> createStorageDirectory(repository, p.prefix())),
+            page.contents().stream()
+                .filter(o -> !prefix.equals(o.key()))
+                .map(o -> createStorageFile(repository, o))));
+  }
+
   @Override
   public boolean exists(String repository, String path) {
     return getFile(repository, path).isPresent();
@@ -115,70 +221,425 @@ public class S3Storage implements Storage {
 
   @Override
   public Optional<StorageFile> getFile(String repository, String path) {
-    int index = path.lastIndexOf('/');
-    String parent = null;
+    String key = getKey(repository, path);
+
+    if (path != null && !path.isEmpty()) {
+      HeadObjectRequest request = HeadObjectRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .build();
 
-    if (index >= 0) {
-      parent = path.substring(0, index);
+      try {
+        return Optional.of(createStorageFile(repository, path, client.headObject(request)));
+      } catch (NoSuchKeyException e) {
+        // not a file, so check for a directory
+      } catch (S3Exception e) {
+        if (e.statusCode() != 404) {
+          throw e;
+        }
+      }
     }
 
-    return listDirectory(repository, parent).stream()
-        .filter(f -> f.getRepository().equals(repository) && f.getPath().equals(path))
-        .findAny();
+    ListObjectsV2Request request = ListObjectsV2Request.builder()
+        .bucket(bucket)
+        .prefix(key + "/")
+        .maxKeys(1)
+        .build();
+
+    if (client.listObjectsV2(request).keyCount() > 0) {
+      return Optional.of(createStorageDirectory(repository, key + "/"));
+    }
+
+    return Optional.empty();
   }
 
   @Override
   public InputStream readFile(String repository, String path) {
-    S3Client client = createClient();
     String key = getKey(repository, path);
     GetObjectRequest request = GetObjectRequest.builder()
         .bucket(bucket)
         .key(key)
         .build();
-    return new S3InputStream(client.getObject(request), client);
+    ResponseInputStream<GetObjectResponse> input = client.getObject(request);
+    Long length = input.response().contentLength();
+    String etag = input.response().eTag();
+    String version = getEtag(etag);
+
+    if (downloadParallelism <= 1 || length == null || length < downloadThreshold ||
+        length <= downloadBuffers.getBufferSize()) {
+      return new VersionedInputStream(input, () -> version);
+    }
+
+    InputStream parallel = new ParallelRangeInputStream(input, length, downloadParallelism,
+        downloadBuffers, new ParallelRangeInputStream.RangeReader() {
+          @Override
+          public void read(long offset, ByteBuffer buffer) throws IOException {
+            readRange(key, etag, offset, buffer);
+          }
+
+          @Override
+          public InputStream open(long offset) {
+            return client.getObject(createRangeRequest(key, etag, "bytes=" + offset + "-"));
+          }
+        }, executor);
+    return new VersionedInputStream(parallel, () -> version);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length) {
+    String key = getKey(repository, path);
+    GetObjectRequest request = GetObjectRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .range("bytes=" + offset + "-" + (offset + length - 1))
+        .build();
+    return client.getObject(request);
   }
 
   @Override
   public void writeFile(String repository, String path, InputStream input) throws IOException {
-    Path temp = Files.createTempFile("maven", "tmp");
+    writeFile(repository, path, Channels.newChannel(input));
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    String key = getKey(repository, path);
+    ByteBuffer small = ByteBuffer.allocate(SMALL_BODY_SIZE);
+
+    if (fill(channel, small)) {
+      putObject(key, small);
+      return;
+    }
+
+    Semaphore permits = new Semaphore(parallelism);
+    ByteBuffer buffer = acquireBuffer(permits);
+    boolean multipart = false;
 
     try {
-      Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
-      long length = temp.toFile().length();
+      buffer.put(small);
 
-      try (S3Client client = createClient();
-          InputStream in = Files.newInputStream(temp)) {
-        String key = getKey(repository, path);
-        PutObjectRequest request = PutObjectRequest.builder()
-            .bucket(bucket)
-            .key(key)
-            .build();
-        client.putObject(request, RequestBody.fromInputStream(in, length));
+      if (fill(channel, buffer)) {
+        putObject(key, buffer);
+      } else {
+        multipart = true;
+        uploadMultipart(key, channel, buffer, permits);
       }
     } finally {
-      temp.toFile().delete();
+      if (!multipart) {
+        releaseBuffer(buffer, permits);
+      }
     }
   }
 
   @Override
   public void createDirectory(String repository, String path) {
-    try (S3Client client = createClient()) {
-      String key = getKey(repository, path) + "/";
+    String key = getKey(repository, path) + "/";
+    PutObjectRequest request = PutObjectRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .build();
+    client.putObject(request, RequestBody.empty());
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    client.close();
+  }
+
+  /**
+   * Reads a range of a file into the remaining space of a buffer.
+   *
+   * @param key    the S3 key.
+   * @param etag   the entity tag that the object must still have.
+   * @param offset the offset of the first byte.
+   * @param buffer the buffer.
+   * @throws IOException if the range could not be read completely.
+   */
+  private void readRange(String key, String etag, long offset, ByteBuffer buffer)
+      throws IOException {
+    int length = buffer.remaining();
+    String range = "bytes=" + offset + "-" + (offset + length - 1);
+
+    try (InputStream input = client.getObject(createRangeRequest(key, etag, range))) {
+      int count =
+          input.readNBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+
+      if (count != length) {
+        throw new IOException("Unexpected end of range " + range + " of " + key);
+      }
+
+      buffer.position(buffer.position() + count);
+    }
+  }
+
+  /**
+   * Creates a request for a range of a file that only succeeds if the object has not changed.
+   *
+   * @param key   the S3 key.
+   * @param etag  the entity tag that the object must still have.
+   * @param range the HTTP range.
+   * @return the request.
+   */
+  private GetObjectRequest createRangeRequest(String key, String etag, String range) {
+    return GetObjectRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .range(range)
+        .ifMatch(etag)
+        .build();
+  }
+
+  /**
+   * Uploads a file that fits in a single buffer with one request. The SHA-1 digest of the content
+   * is stored in the object metadata.
+   *
+   * @param key    the S3 key.
+   * @param buffer the content of the file.
+   * @throws IOException if the digest cannot be calculated.
+   */
+  private void putObject(String key, ByteBuffer buffer) throws IOException {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      sha1.update(buffer.duplicate());
       PutObjectRequest request = PutObjectRequest.builder()
           .bucket(bucket)
           .key(key)
+          .metadata(Map.of(SHA1_METADATA, toHex(sha1.digest())))
           .build();
-      client.putObject(request, RequestBody.empty());
+      client.putObject(request, createRequestBody(buffer));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("Failed to calculate digest", e);
     }
   }
 
   /**
-   * Creates a new S3 client instance.
+   * Uploads a file in parts. Each part is uploaded in the background as soon as its buffer has been
+   * filled, while the next part is read from the channel. The upload is aborted if any part fails.
    *
-   * @return a new client.
+   * @param key     the S3 key.
+   * @param channel the channel from which the rest of the file is read.
+   * @param first   the filled buffer containing the first part, which is released by this method.
+   * @param permits the permits that limit the number of parts in flight.
+   * @throws IOException if an I/O error occurs.
    */
-  private S3Client createClient() {
-    return S3Client.builder().build();
+  private void uploadMultipart(String key, ReadableByteChannel channel, ByteBuffer first,
+      Semaphore permits) throws IOException {
+    CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .build();
+    String uploadId;
+
+    try {
+      uploadId = client.createMultipartUpload(createRequest).uploadId();
+    } catch (RuntimeException e) {
+      releaseBuffer(first, permits);
+      throw e;
+    }
+
+    List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+    ByteBuffer buffer = first;
+
+    try {
+      boolean last = false;
+
+      while (buffer != null) {
+        ByteBuffer part = buffer;
+        buffer = null;
+        parts.add(uploadPart(key, uploadId, parts.size() + 1, part, permits));
+
+        if (!last) {
+          for (CompletableFuture<CompletedPart> pending : parts) {
+            if (pending.isCompletedExceptionally()) {
+              join(pending);
+            }
+          }
+
+          buffer = acquireBuffer(permits);
+          last = fill(channel, buffer);
+
+          if (!buffer.hasRemaining()) {
+            releaseBuffer(buffer, permits);
+            buffer = null;
+          }
+        }
+      }
+
+      List<CompletedPart> completed = new ArrayList<>();
+
+      for (CompletableFuture<CompletedPart> part : parts) {
+        completed.add(join(part));
+      }
+
+      CompleteMultipartUploadRequest request = CompleteMultipartUploadRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .uploadId(uploadId)
+          .multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+          .build();
+      client.completeMultipartUpload(request);
+    } catch (IOException | RuntimeException e) {
+      if (buffer != null) {
+        releaseBuffer(buffer, permits);
+      }
+
+      abortMultipart(key, uploadId, parts, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Starts the upload of a part in the background. The buffer and permit are released when the
+   * upload of the part finishes.
+   *
+   * @param key      the S3 key.
+   * @param uploadId the ID of the multipart upload.
+   * @param number   the part number.
+   * @param buffer   the content of the part.
+   * @param permits  the permits that limit the number of parts in flight.
+   * @return the future result of the upload.
+   */
+  private CompletableFuture<CompletedPart> uploadPart(String key, String uploadId, int number,
+      ByteBuffer buffer, Semaphore permits) {
+    UploadPartRequest request = UploadPartRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .uploadId(uploadId)
+        .partNumber(number)
+        .contentLength((long) buffer.remaining())
+        .build();
+
+    try {
+      return CompletableFuture.supplyAsync(() -> {
+        try {
+          String etag = client.uploadPart(request, createRequestBody(buffer)).eTag();
+          return CompletedPart.builder().partNumber(number).eTag(etag).build();
+        } finally {
+          releaseBuffer(buffer, permits);
+        }
+      }, executor);
+    } catch (RejectedExecutionException e) {
+      releaseBuffer(buffer, permits);
+      throw e;
+    }
+  }
+
+  /**
+   * Aborts a multipart upload after waiting for the parts that are in flight to finish, so that no
+   * part is stored after the upload has been aborted.
+   *
+   * @param key      the S3 key.
+   * @param uploadId the ID of the multipart upload.
+   * @param parts    the parts that have been started.
+   * @param cause    the exception that caused the upload to fail.
+   */
+  private void abortMultipart(String key, String uploadId,
+      List<CompletableFuture<CompletedPart>> parts, Exception cause) {
+    for (CompletableFuture<CompletedPart> part : parts) {
+      try {
+        part.join();
+      } catch (RuntimeException ignore) {
+      }
+    }
+
+    try {
+      AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .uploadId(uploadId)
+          .build();
+      client.abortMultipartUpload(request);
+    } catch (RuntimeException e) {
+      cause.addSuppressed(e);
+    }
+  }
+
+  /**
+   * Creates a request body that reads the remaining content of a buffer without copying it. The
+   * body can be read again if the request is retried.
+   *
+   * @param buffer the buffer.
+   * @return the request body.
+   */
+  private static RequestBody createRequestBody(ByteBuffer buffer) {
+    return RequestBody.fromContentProvider(() -> new ByteBufferInputStream(buffer.duplicate()),
+        buffer.remaining(), "application/octet-stream");
+  }
+
+  /**
+   * Acquires a permit to upload a part and a buffer for its content.
+   *
+   * @param permits the permits that limit the number of parts in flight.
+   * @return the buffer.
+   * @throws IOException if the thread is interrupted or times out while waiting for a buffer.
+   */
+  private ByteBuffer acquireBuffer(Semaphore permits) throws IOException {
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to upload a part");
+    }
+
+    try {
+      return buffers.acquire(BUFFER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (IOException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Releases a buffer and its upload permit.
+   *
+   * @param buffer  the buffer.
+   * @param permits the permits that limit the number of parts in flight.
+   */
+  private void releaseBuffer(ByteBuffer buffer, Semaphore permits) {
+    buffers.release(buffer);
+    permits.release();
+  }
+
+  /**
+   * Fills the remaining space of a buffer from a channel and flips it for reading.
+   *
+   * @param channel the channel.
+   * @param buffer  the buffer.
+   * @return {@code true} if the end of the channel has been reached or {@code false} if the buffer
+   *     was filled before the end of the channel.
+   * @throws IOException if an I/O error occurs.
+   */
+  private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) < 0) {
+        buffer.flip();
+        return true;
+      }
+    }
+
+    buffer.flip();
+    return false;
+  }
+
+  /**
+   * Waits for an upload of a part to finish.
+   *
+   * @param part the future result of the upload.
+   * @return the uploaded part.
+   * @throws IOException if the upload failed.
+   */
+  private static CompletedPart join(CompletableFuture<CompletedPart> part) throws IOException {
+    try {
+      return part.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw new IOException("Failed to upload part", e.getCause());
+    }
   }
 
   /**
@@ -188,7 +649,7 @@ public class S3Storage implements Storage {
    * @param path       the path to the file.
    * @return the S3 key.
    */
-  private String getKey(String repository, String path) {
+  static String getKey(String repository, String path) {
     StringBuilder sb = new StringBuilder(repository);
 
     if (path != null && !path.isEmpty()) {
@@ -205,7 +666,7 @@ public class S3Storage implements Storage {
    * @param prefix     the common prefix representing a directory.
    * @return the storage file.
    */
-  private StorageFile createStorageDirectory(String repository, String prefix) {
+  static StorageFile createStorageDirectory(String repository, String prefix) {
     StorageFile file = new StorageFile();
     file.setDirectory(true);
     file.setRepository(repository);
@@ -220,34 +681,131 @@ public class S3Storage implements Storage {
    * @param object     the S3 object.
    * @return the storage file.
    */
-  private StorageFile createStorageFile(String repository, S3Object object) {
+  static StorageFile createStorageFile(String repository, S3Object object) {
     StorageFile file = new StorageFile();
     file.setDirectory(false);
     file.setRepository(repository);
     file.setPath(object.key().substring(repository.length() + 1));
     file.setSize(object.size());
     file.setCreated(LocalDateTime.ofInstant(object.lastModified(), ZoneOffset.systemDefault()));
+    file.setEtag(getEtag(object.eTag()));
     return file;
   }
 
-  private static final class S3InputStream extends FilterInputStream {
+  /**
+   * Creates the storage file for the metadata of a S3 object.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param response   the metadata of the S3 object.
+   * @return the storage file.
+   */
+  static StorageFile createStorageFile(
+      String repository, String path, HeadObjectResponse response) {
+    StorageFile file = new StorageFile();
+    file.setDirectory(false);
+    file.setRepository(repository);
+    file.setPath(path);
+    file.setSize(response.contentLength());
+    file.setCreated(LocalDateTime.ofInstant(response.lastModified(), ZoneOffset.systemDefault()));
+    file.setEtag(getEtag(response.eTag()));
+    file.setSha1(response.metadata().get(SHA1_METADATA));
+    return file;
+  }
 
-    private final S3Client client;
+  /**
+   * Removes the quotes from an S3 entity tag.
+   *
+   * @param etag the quoted entity tag.
+   * @return the entity tag or {@code null} if there is none.
+   */
+  static String getEtag(String etag) {
+    if (etag == null || etag.length() < 2 || !etag.startsWith("\"")) {
+      return etag;
+    }
 
-    public S3InputStream(InputStream in, S3Client client) {
-      super(in);
-      this.client = client;
+    return etag.substring(1, etag.length() - 1);
+  }
+
+  /**
+   * Hex-encodes a digest.
+   *
+   * @param digest the digest.
+   * @return the hex-encoded digest.
+   */
+  private static String toHex(byte[] digest) {
+    StringBuilder hex = new StringBuilder();
+
+    for (byte b : digest) {
+      hex.append(String.format("%02x", ((int) b) & 0xff));
+    }
+
+    return hex.toString();
+  }
+
+  /**
+   * {@code ListingPages} iterates over the pages of a directory listing. While a page is being
+   * consumed, the next page is fetched in the background, since continuation tokens only allow the
+   * pages to be requested one after another.
+   */
+  private final class ListingPages implements Iterator<ListObjectsV2Response> {
+
+    private final ListObjectsV2Request request;
+    private CompletableFuture<ListObjectsV2Response> next;
+
+    /**
+     * Creates a new instance of {@code ListingPages} and fetches the first page.
+     *
+     * @param request the request for the first page.
+     */
+    ListingPages(ListObjectsV2Request request) {
+      this.request = request;
+      this.next = CompletableFuture.completedFuture(client.listObjectsV2(request));
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
     }
 
     @Override
-    public void close() throws IOException {
+    public ListObjectsV2Response next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+
+      ListObjectsV2Response page;
+
       try {
-        super.close();
-      } finally {
-        try {
-          client.close();
-        } catch (Exception ignore) {
+        page = next.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
         }
+
+        throw e;
+      }
+
+      String token = page.nextContinuationToken();
+
+      if (Boolean.TRUE.equals(page.isTruncated()) && token != null) {
+        ListObjectsV2Request nextRequest = request.toBuilder().continuationToken(token).build();
+        next = CompletableFuture.supplyAsync(
+            () -> client.listObjectsV2(nextRequest), executor);
+      } else {
+        next = null;
+      }
+
+      return page;
+    }
+
+    /**
+     * Cancels the fetch of the next page, if there is one.
+     */
+    void cancel() {
+      if (next != null) {
+        next.cancel(false);
+        next = null;
       }
     }
   }
@@ -0,0 +1,49 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.Serializable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * {@code Stamped} is a cached value together with the write stamp of its key at the time the
+ * value started loading. A value whose stamp is older than the current stamp of its key may have
+ * been loaded before a write completed, and must not be used.
+ *
+ * @param <T> the type of the value.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+final class Stamped<T extends Serializable> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The write stamp of the key when the value started loading.
+   */
+  private long stamp;
+
+  /**
+   * The cached value.
+   */
+  private T value;
+}
@@ -18,15 +18,24 @@
 
 package com.jshobe.maven.storage;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 /**
  * {@code Storage} provides an interface that provide persistent storage of artifacts.
  */
-public interface Storage {
+public interface Storage extends Closeable {
 
   /**
    * Gets the names of the repositories in storage.
@@ -49,6 +58,24 @@ public interface Storage {
    */
   List<StorageFile> listDirectory(String repository, String path) throws IOException;
 
+  /**
+   * Streams the contents of a directory. Implementations that list directories in pages return the
+   * entries of each page as soon as it arrives, so that large directories are neither truncated nor
+   * held in memory all at once. The stream should be closed if it is not fully consumed.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the directory. May be {@code null} or an empty string to list the
+   *                   root of the repository.
+   * @return the directory contents.
+   * @throws IllegalArgumentException if the directory does not exist.
+   * @throws IOException              if an I/O error occurs that prevents the contents from being
+   *                                  listed.
+   */
+  default Stream<StorageFile> streamDirectory(String repository, String path)
+      throws IOException {
+    return listDirectory(repository, path).stream();
+  }
+
   /**
    * Determines if a file or directory at the specified path exists.
    *
@@ -69,6 +96,19 @@ public interface Storage {
    */
   Optional<StorageFile> getFile(String repository, String path) throws IOException;
 
+  /**
+   * Determines if the file information returned by {@link #getFile(String, String)} is served from
+   * an in-memory cache, so that it may be looked up on a non-blocking I/O thread. The default
+   * implementation returns {@code false}; storage that caches file information, and decorators of
+   * such storage, override this method.
+   *
+   * @return {@code true} if file information is cached or {@code false} if looking it up may
+   *     block.
+   */
+  default boolean isMetadataCached() {
+    return false;
+  }
+
   /**
    * Gets an input stream for the file at the specified path.
    *
@@ -81,6 +121,81 @@ public interface Storage {
    */
   InputStream readFile(String repository, String path) throws IOException;
 
+  /**
+   * Gets an input stream for a range of bytes in the file at the specified path. The default
+   * implementation skips to the offset in the stream returned by
+   * {@link #readFile(String, String)}. Implementations should override this method if they are able
+   * to read a range natively.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param offset     the offset of the first byte to read.
+   * @param length     the number of bytes to read.
+   * @return an input stream from which the range of the file can be read.
+   * @throws IllegalArgumentException if the file does not exist or is a directory.
+   * @throws IOException              if an I/O error occurs that prevents the file from being
+   *                                  opened.
+   */
+  default InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    InputStream input = readFile(repository, path);
+
+    try {
+      RangeInputStream.skipFully(input, offset);
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    }
+
+    return new RangeInputStream(input, length);
+  }
+
+  /**
+   * Gets a publisher for the contents of the file at the specified path. The file is only read as
+   * the subscriber requests data. The default implementation reads the stream returned by
+   * {@link #readFile(String, String)} on the specified executor. Implementations should override
+   * this method if they are able to read files asynchronously.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param executor   the executor used to perform any blocking reads.
+   * @return a publisher of the contents of the file.
+   * @throws IOException if an I/O error occurs that prevents the file from being opened.
+   */
+  default Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    return new InputStreamPublisher(() -> readFile(repository, path), executor);
+  }
+
+  /**
+   * Opens a channel from which the file at the specified path is read. Storage that can read
+   * files into buffers without copying them through a stream overrides this method; a
+   * {@link java.nio.channels.FileChannel} is returned for files in the local file system.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return a channel from which the file contents are read.
+   * @throws IllegalArgumentException if the path does not exist or is a directory.
+   * @throws IOException              if an I/O error occurs that prevents the file from being
+   *                                  opened.
+   */
+  default ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    return Channels.newChannel(readFile(repository, path));
+  }
+
+  /**
+   * Gets the path to the file in the local file system, if the file is stored locally. This allows
+   * the file to be served directly from the file system without copying it through the heap.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the local path to the file or an empty optional if the file is not stored locally.
+   * @throws IOException if an I/O error occurs that prevents the file from being obtained.
+   */
+  default Optional<Path> getLocalPath(String repository, String path) throws IOException {
+    return Optional.empty();
+  }
+
   /**
    * Writes the file at the specified path.
    *
@@ -94,6 +209,55 @@ public interface Storage {
    */
   void writeFile(String repository, String path, InputStream input) throws IOException;
 
+  /**
+   * Writes the file at the specified path from a channel. Storage that can write buffers without
+   * copying them through a stream overrides this method.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param channel    the blocking channel from which the file contents are read.
+   * @throws IllegalArgumentException if the parent directory does not exist or the path is for an
+   *                                  existing directory.
+   * @throws IOException              if an I/O error occurs that prevents the file from being
+   *                                  opened.
+   */
+  default void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    writeFile(repository, path, Channels.newInputStream(channel));
+  }
+
+  /**
+   * Writes the file at the specified path from a publisher of its contents, without blocking the
+   * calling thread while the contents are transferred. The default implementation passes the
+   * published buffers as an input stream to {@link #writeFile(String, String, InputStream)}, which
+   * is called on the specified executor. Implementations should override this method if they are
+   * able to write files asynchronously.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param length     the length of the file in bytes or {@code -1} if it is not known.
+   * @param body       the publisher of the file contents, which may only be subscribed once.
+   * @param executor   the executor used to perform any blocking writes.
+   * @return a future that is completed when the file has been written.
+   */
+  default CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    PublisherInputStream input = new PublisherInputStream();
+    body.subscribe(input);
+
+    executor.execute(() -> {
+      try (input) {
+        writeFile(repository, path, input);
+        result.complete(null);
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+
+    return result;
+  }
+
   /**
    * Creates a directory and its parent directories, if it does not exist.
    *
@@ -102,4 +266,22 @@ public interface Storage {
    * @throws IOException if an I/O error occurs that prevents the directory from being created.
    */
   void createDirectory(String repository, String path) throws IOException;
+
+  /**
+   * Adds a listener that is notified when files are changed outside of this storage interface.
+   * Storage that cannot detect such changes ignores the listener.
+   *
+   * @param listener the listener to add.
+   */
+  default void addStorageListener(StorageListener listener) {
+  }
+
+  /**
+   * Releases the resources held by the storage.
+   *
+   * @throws IOException if an I/O error occurs.
+   */
+  @Override
+  default void close() throws IOException {
+  }
 }
@@ -33,6 +33,8 @@ import lombok.With;
 @AllArgsConstructor
 public class StorageFile implements Serializable {
 
+  private static final long serialVersionUID = 2L;
+
   /**
    * A flag indicating if the storage object is a directory.
    */
@@ -52,10 +54,23 @@ public class StorageFile implements Serializable {
   /**
    * The size of the storage object in bytes.
    */
+  @With
   private long size;
 
   /**
    * The date and time at which the storage object was created.
    */
   private LocalDateTime created;
+
+  /**
+   * The hex-encoded SHA-1 digest of the storage object, if it is known.
+   */
+  @With
+  private String sha1;
+
+  /**
+   * The entity tag reported by the storage for the storage object, if it has one.
+   */
+  @With
+  private String etag;
 }
@@ -0,0 +1,374 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
+
+/**
+ * {@code StripedStorage} is an implementation of {@link Storage} that spreads artifacts over
+ * several local directories, which are normally on separate volumes. The files in a directory are
+ * all placed on the same volume, which is chosen by rendezvous hashing of the repository and
+ * directory path. The placement only depends on the directory path and the paths of the volumes,
+ * so adding a volume only moves the directories that are placed on the new volume, which can be
+ * done with {@link #rebalance()}.
+ */
+public class StripedStorage implements Storage {
+
+  private final List<Path> roots;
+  private final List<LocalStorage> volumes;
+  private final long[] seeds;
+
+  /**
+   * Creates a new instance of {@code StripedStorage}.
+   *
+   * @param roots        the paths to the directories where the artifacts will be stored.
+   * @param repositories the repository names.
+   * @param durability   the policy used to make written files durable.
+   * @param watch        {@code true} to watch the repository directories for changes made by
+   *                     other processes and notify the storage listeners.
+   * @param dedup        {@code true} to deduplicate identical files on each volume.
+   * @throws IOException if an I/O error prevented the storage from being initialized.
+   */
+  public StripedStorage(List<Path> roots, Set<String> repositories,
+      LocalStorage.Durability durability, boolean watch, boolean dedup) throws IOException {
+    if (roots.isEmpty()) {
+      throw new IllegalArgumentException("At least one volume is required");
+    }
+
+    this.roots = new ArrayList<>();
+    this.volumes = new ArrayList<>();
+    this.seeds = new long[roots.size()];
+
+    for (int i = 0; i < roots.size(); i++) {
+      Path root = roots.get(i).toAbsolutePath().normalize();
+      Files.createDirectories(root);
+      this.roots.add(root);
+      this.volumes.add(new LocalStorage(root, repositories, durability, watch, dedup));
+      this.seeds[i] = hash(root.toString(), 0L);
+    }
+  }
+
+  @Override
+  public List<String> getRepositories() {
+    return volumes.get(0).getRepositories();
+  }
+
+  @Override
+  public List<StorageFile> listDirectory(String repository, String path) throws IOException {
+    return getVolume(repository, path).listDirectory(repository, path);
+  }
+
+  @Override
+  public Stream<StorageFile> streamDirectory(String repository, String path)
+      throws IOException {
+    return getVolume(repository, path).streamDirectory(repository, path);
+  }
+
+  @Override
+  public boolean exists(String repository, String path) throws IOException {
+    return getFile(repository, path).isPresent();
+  }
+
+  @Override
+  public Optional<StorageFile> getFile(String repository, String path) throws IOException {
+    return getParentVolume(repository, path).getFile(repository, path);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path) throws IOException {
+    return getParentVolume(repository, path).readFile(repository, path);
+  }
+
+  @Override
+  public InputStream readFile(String repository, String path, long offset, long length)
+      throws IOException {
+    return getParentVolume(repository, path).readFile(repository, path, offset, length);
+  }
+
+  @Override
+  public Flow.Publisher<ByteBuffer> readFileAsync(
+      String repository, String path, Executor executor) throws IOException {
+    return getParentVolume(repository, path).readFileAsync(repository, path, executor);
+  }
+
+  @Override
+  public ReadableByteChannel openChannel(String repository, String path) throws IOException {
+    return getParentVolume(repository, path).openChannel(repository, path);
+  }
+
+  @Override
+  public Optional<Path> getLocalPath(String repository, String path) {
+    return getParentVolume(repository, path).getLocalPath(repository, path);
+  }
+
+  @Override
+  public void writeFile(String repository, String path, InputStream input) throws IOException {
+    getParentVolume(repository, path).writeFile(repository, path, input);
+  }
+
+  @Override
+  public void writeFile(String repository, String path, ReadableByteChannel channel)
+      throws IOException {
+    getParentVolume(repository, path).writeFile(repository, path, channel);
+  }
+
+  @Override
+  public CompletableFuture<Void> writeFileAsync(String repository, String path, long length,
+      Flow.Publisher<ByteBuffer> body, Executor executor) {
+    return getParentVolume(repository, path)
+        .writeFileAsync(repository, path, length, body, executor);
+  }
+
+  /**
+   * Creates a directory and its parent directories, if it does not exist. Each directory is
+   * created on the volume that holds its parent's entries, so that it is listed, and on the volume
+   * that holds its own entries.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the directory.
+   * @throws IOException if an I/O error occurs that prevents the directory from being created.
+   */
+  @Override
+  public void createDirectory(String repository, String path) throws IOException {
+    int index = 0;
+
+    while (index >= 0) {
+      index = path.indexOf('/', index + 1);
+      String directory = index < 0 ? path : path.substring(0, index);
+      getParentVolume(repository, directory).createDirectory(repository, directory);
+      getVolume(repository, directory).createDirectory(repository, directory);
+    }
+  }
+
+  @Override
+  public void addStorageListener(StorageListener listener) {
+    for (LocalStorage volume : volumes) {
+      volume.addStorageListener(listener);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (LocalStorage volume : volumes) {
+      volume.close();
+    }
+  }
+
+  /**
+   * Moves every file that is not on the volume chosen by the placement function to that volume.
+   * Every directory is also created on the volumes that now hold it and its entries, so that
+   * directories which only contain subdirectories are still listed. This should be run while the
+   * server is stopped, after a volume has been added.
+   *
+   * @return the number of files that were moved.
+   * @throws IOException if an I/O error occurs.
+   */
+  public long rebalance() throws IOException {
+    long[] moved = {0L};
+
+    for (int i = 0; i < roots.size(); i++) {
+      int volume = i;
+
+      for (String repository : getRepositories()) {
+        Path repositoryPath = roots.get(i).resolve(repository);
+
+        Files.walkFileTree(repositoryPath, new SimpleFileVisitor<>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            if (dir.equals(repositoryPath)) {
+              return FileVisitResult.CONTINUE;
+            }
+
+            if (dir.getFileName().toString().startsWith(".")) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+
+            createDirectory(repository, toStoragePath(repositoryPath.relativize(dir)));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            String path = toStoragePath(repositoryPath.relativize(file));
+
+            if (attrs.isRegularFile() && !file.getFileName().toString().startsWith(".") &&
+                select(repository, getParentPath(path)) != volume) {
+              moveFile(repository, path, file);
+              moved[0]++;
+            }
+
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      }
+    }
+
+    return moved[0];
+  }
+
+  /**
+   * Moves a file to the volume chosen by the placement function.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @param file       the current location of the file.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void moveFile(String repository, String path, Path file) throws IOException {
+    String parentPath = getParentPath(path);
+
+    if (!parentPath.isEmpty()) {
+      createDirectory(repository, parentPath);
+    }
+
+    try (InputStream input = Files.newInputStream(file)) {
+      writeFile(repository, path, input);
+    }
+
+    Files.delete(file);
+  }
+
+  /**
+   * Gets the volume that holds the entries of a directory.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the directory.
+   * @return the volume.
+   */
+  private LocalStorage getVolume(String repository, String path) {
+    return volumes.get(select(repository, path == null ? "" : path));
+  }
+
+  /**
+   * Gets the volume that holds a file, which is the volume that holds the entries of its parent
+   * directory.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the file.
+   * @return the volume.
+   */
+  private LocalStorage getParentVolume(String repository, String path) {
+    if (path == null || path.isEmpty()) {
+      return volumes.get(0);
+    }
+
+    return volumes.get(select(repository, getParentPath(path)));
+  }
+
+  /**
+   * Selects the volume for the entries of a directory using rendezvous hashing: the volume with
+   * the highest score for the directory is chosen.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path to the directory.
+   * @return the index of the volume.
+   */
+  private int select(String repository, String path) {
+    String key = repository + '/' + path;
+    int selected = 0;
+    long best = Long.MIN_VALUE;
+
+    for (int i = 0; i < seeds.length; i++) {
+      long score = hash(key, seeds[i]);
+
+      if (score > best) {
+        best = score;
+        selected = i;
+      }
+    }
+
+    return selected;
+  }
+
+  /**
+   * Calculates a 64-bit FNV-1a hash of a string, with a final avalanche step.
+   *
+   * @param value the string to hash.
+   * @param seed  the seed that is mixed into the hash.
+   * @return the hash.
+   */
+  private static long hash(String value, long seed) {
+    long hash = 0xcbf29ce484222325L ^ seed;
+
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  /**
+   * Gets the parent path of a path.
+   *
+   * @param path the path.
+   * @return the parent path.
+   */
+  private static String getParentPath(String path) {
+    int index = path.lastIndexOf('/');
+
+    if (index < 0) {
+      return "";
+    }
+
+    return path.substring(0, index);
+  }
+
+  /**
+   * Converts a relative path to a string.
+   *
+   * @param path the path to convert.
+   * @return the string representation of the path.
+   */
+  private static String toStoragePath(Path path) {
+    StringBuilder sb = new StringBuilder();
+
+    for (Path name : path) {
+      if (sb.length() > 0) {
+        sb.append('/');
+      }
+
+      sb.append(name.toString());
+    }
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@code TeePublisher} is a publisher that copies the buffers that are published through it to a
+ * {@link Sink}, such as a cache that is filled as a file is read. The sink is completed when the
+ * whole body has been published, and aborted if the body fails or the subscriber cancels it. A sink
+ * that fails stops receiving buffers, but the body is still published to the subscriber.
+ */
+final class TeePublisher implements Flow.Publisher<ByteBuffer> {
+
+  private final Flow.Publisher<ByteBuffer> publisher;
+  private final Sink sink;
+
+  /**
+   * Creates a new instance of {@code TeePublisher}.
+   *
+   * @param publisher the publisher of the buffers.
+   * @param sink      the sink to which the buffers are copied.
+   */
+  TeePublisher(Flow.Publisher<ByteBuffer> publisher, Sink sink) {
+    this.publisher = publisher;
+    this.sink = sink;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    AtomicBoolean done = new AtomicBoolean();
+
+    publisher.subscribe(new Flow.Subscriber<>() {
+
+      @Override
+      public void onSubscribe(Flow.Subscription subscription) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+          @Override
+          public void request(long n) {
+            subscription.request(n);
+          }
+
+          @Override
+          public void cancel() {
+            if (done.compareAndSet(false, true)) {
+              sink.abort();
+            }
+
+            subscription.cancel();
+          }
+        });
+      }
+
+      @Override
+      public void onNext(ByteBuffer buffer) {
+        if (!done.get()) {
+          try {
+            sink.write(buffer.duplicate());
+          } catch (IOException | RuntimeException e) {
+            if (done.compareAndSet(false, true)) {
+              sink.abort();
+            }
+          }
+        }
+
+        subscriber.onNext(buffer);
+      }
+
+      @Override
+      public void onError(Throwable throwable) {
+        if (done.compareAndSet(false, true)) {
+          sink.abort();
+        }
+
+        subscriber.onError(throwable);
+      }
+
+      @Override
+      public void onComplete() {
+        if (done.compareAndSet(false, true)) {
+          try {
+            sink.complete();
+          } catch (IOException | RuntimeException e) {
+            sink.abort();
+          }
+        }
+
+        subscriber.onComplete();
+      }
+    });
+  }
+
+  /**
+   * {@code Sink} receives copies of the published buffers.
+   */
+  interface Sink {
+
+    /**
+     * Writes a published buffer.
+     *
+     * @param buffer the buffer, which may be consumed.
+     * @throws IOException if the buffer could not be written.
+     */
+    void write(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Completes the sink after the whole body has been written.
+     *
+     * @throws IOException if the sink could not be completed.
+     */
+    void complete() throws IOException;
+
+    /**
+     * Discards what has been written to the sink. This method must not throw.
+     */
+    void abort();
+  }
+}
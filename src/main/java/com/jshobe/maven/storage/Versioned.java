@@ -0,0 +1,35 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+/**
+ * {@code Versioned} is implemented by the streams and publishers of storage that reports the
+ * version of the file that a read returned. This may differ from the version reported by an earlier
+ * call to {@link Storage#getFile(String, String)} if the file was overwritten in between.
+ */
+interface Versioned {
+
+  /**
+   * Gets the version of the file that is read.
+   *
+   * @return the entity tag of the file or {@code null} if it is not known yet.
+   */
+  String getVersion();
+}
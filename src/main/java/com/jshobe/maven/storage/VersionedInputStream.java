@@ -0,0 +1,49 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * {@code VersionedInputStream} is an input stream that reports the version of the file from which
+ * the wrapped stream reads.
+ */
+final class VersionedInputStream extends FilterInputStream implements Versioned {
+
+  private final Supplier<String> version;
+
+  /**
+   * Creates a new instance of {@code VersionedInputStream}.
+   *
+   * @param in      the wrapped input stream.
+   * @param version the supplier of the version of the file that is read.
+   */
+  VersionedInputStream(InputStream in, Supplier<String> version) {
+    super(in);
+    this.version = version;
+  }
+
+  @Override
+  public String getVersion() {
+    return version.get();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code WriteLocks} serializes writes to the same path. A lock exists only while it is held or
+ * waited for, so writes to different paths never contend. When several paths are locked at once,
+ * they are always locked in the same order to prevent deadlocks. Locks are not owned by a thread,
+ * so a handle may be closed by a different thread than the one that acquired it, as when an
+ * asynchronous write completes. Reads do not take locks.
+ *
+ * <p>Each key maps to the future that completes when its last holder releases it. A new holder
+ * replaces that future with its own and is granted the lock when the previous one completes, so
+ * waiting for a lock asynchronously never parks a thread.
+ */
+final class WriteLocks {
+
+  private final ConcurrentHashMap<String, CompletableFuture<Void>> locks;
+
+  /**
+   * Creates a new instance of {@code WriteLocks}.
+   */
+  WriteLocks() {
+    locks = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Acquires the locks for a set of keys, waiting until they are available.
+   *
+   * @param keys the keys to lock.
+   * @return a handle that releases the locks when closed.
+   */
+  Handle lock(String... keys) {
+    return lockAsync(keys).join();
+  }
+
+  /**
+   * Acquires the locks for a set of keys without blocking the calling thread. The returned future
+   * may be completed by the thread that releases the last of the locks.
+   *
+   * @param keys the keys to lock.
+   * @return a future that completes with a handle that releases the locks when closed.
+   */
+  CompletableFuture<Handle> lockAsync(String... keys) {
+    String[] sorted = Arrays.stream(keys).distinct().sorted().toArray(String[]::new);
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Void>[] held = new CompletableFuture[sorted.length];
+    CompletableFuture<Handle> result = new CompletableFuture<>();
+    acquire(sorted, held, 0, result);
+    return result;
+  }
+
+  /**
+   * Acquires the lock for a key once the locks for the preceding keys are held.
+   *
+   * @param keys   the sorted keys to lock.
+   * @param held   the futures of the locks that have been acquired, in the order of the keys.
+   * @param index  the index of the key to lock.
+   * @param result the future that is completed with the handle when all locks are held.
+   */
+  private void acquire(String[] keys, CompletableFuture<Void>[] held, int index,
+      CompletableFuture<Handle> result) {
+    if (index == keys.length) {
+      result.complete(() -> release(keys, held));
+      return;
+    }
+
+    CompletableFuture<Void> lock = new CompletableFuture<>();
+    CompletableFuture<Void> previous = locks.put(keys[index], lock);
+    held[index] = lock;
+
+    if (previous == null) {
+      acquire(keys, held, index + 1, result);
+    } else {
+      previous.whenComplete((value, error) -> acquire(keys, held, index + 1, result));
+    }
+  }
+
+  /**
+   * Releases a set of locks, granting each of them to its next waiter.
+   *
+   * @param keys the sorted keys.
+   * @param held the futures of the locks, in the order of the keys.
+   */
+  private void release(String[] keys, CompletableFuture<Void>[] held) {
+    for (int i = keys.length - 1; i >= 0; i--) {
+      locks.remove(keys[i], held[i]);
+      held[i].complete(null);
+    }
+  }
+
+  /**
+   * {@code Handle} releases a set of locks.
+   */
+  interface Handle extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+}
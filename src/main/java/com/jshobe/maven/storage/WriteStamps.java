@@ -0,0 +1,87 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.jshobe.maven.storage;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code WriteStamps} is a striped table of counters that are advanced each time a path is
+ * written. A cache loader reads the stamp of its key before loading, and the loaded value is
+ * rejected if the stamp has advanced since, so a load that overlaps a write can never be cached
+ * past it. Reading a stamp never blocks. Paths that share a stripe only cause extra reloads.
+ */
+final class WriteStamps {
+
+  private static final int STRIPES = 4096;
+
+  private final AtomicLongArray stamps;
+
+  /**
+   * Creates a new instance of {@code WriteStamps}.
+   */
+  WriteStamps() {
+    stamps = new AtomicLongArray(STRIPES);
+  }
+
+  /**
+   * Gets the current stamp of a path.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path.
+   * @return the stamp.
+   */
+  long get(String repository, String path) {
+    return stamps.get(indexOf(repository, path));
+  }
+
+  /**
+   * Advances the stamp of a path after it has been written.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path.
+   */
+  void advance(String repository, String path) {
+    stamps.incrementAndGet(indexOf(repository, path));
+  }
+
+  /**
+   * Determines if a stamped value was loaded after the last write to its path.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path.
+   * @param value      the stamped value.
+   * @return {@code true} if the value is current or {@code false} if it must be reloaded.
+   */
+  boolean isCurrent(String repository, String path, Stamped<?> value) {
+    return value.getStamp() >= get(repository, path);
+  }
+
+  /**
+   * Gets the stripe of a path.
+   *
+   * @param repository the name of the repository.
+   * @param path       the path.
+   * @return the stripe index.
+   */
+  private static int indexOf(String repository, String path) {
+    int h = repository.hashCode() * 31 + (path == null ? 0 : path.hashCode());
+    h *= 0x9e3779b9;
+    return (h ^ (h >>> 16)) & (STRIPES - 1);
+  }
+}
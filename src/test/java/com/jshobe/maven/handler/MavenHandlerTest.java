@@ -0,0 +1,267 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.handler;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.jshobe.maven.storage.LocalStorage;
+import io.undertow.Undertow;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the responses of {@link MavenHandler} to requests for files in local storage.
+ */
+class MavenHandlerTest {
+
+  private static final String REPOSITORY = "releases";
+  private static final String DIRECTORY = "com/example/demo/1.0";
+  private static final String JAR = DIRECTORY + "/demo-1.0.jar";
+  private static final String POM = DIRECTORY + "/demo-1.0.pom";
+
+  @TempDir
+  Path directory;
+
+  private byte[] content;
+  private LocalStorage storage;
+  private Undertow server;
+  private HttpClient client;
+  private URI base;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    content = new byte[10000];
+    new Random(1L).nextBytes(content);
+    storage = new LocalStorage(directory, Set.of(REPOSITORY));
+    storage.createDirectory(REPOSITORY, DIRECTORY);
+    storage.writeFile(REPOSITORY, JAR, new ByteArrayInputStream(content));
+    storage.writeFile(REPOSITORY, POM, new ByteArrayInputStream(
+        "<project>\n".concat("  <!-- padding -->\n".repeat(50)).concat("</project>\n")
+            .getBytes(StandardCharsets.UTF_8)));
+
+    server = Undertow.builder()
+        .addHttpListener(0, "localhost")
+        .setHandler(new MavenHandler(
+            storage, null, false, null, new CompressionCache(1024L * 1024L)))
+        .build();
+    server.start();
+
+    InetSocketAddress address = (InetSocketAddress) server.getListenerInfo().get(0).getAddress();
+    base = URI.create("http://localhost:" + address.getPort() + "/" + REPOSITORY + "/");
+    client = HttpClient.newHttpClient();
+  }
+
+  @AfterEach
+  void stopServer() throws IOException {
+    server.stop();
+    storage.close();
+  }
+
+  @Test
+  void getSendsWholeFile() throws Exception {
+    HttpResponse<byte[]> response = send(request(JAR).GET());
+
+    assertEquals(200, response.statusCode());
+    assertEquals("bytes", response.headers().firstValue("Accept-Ranges").orElse(null));
+    assertArrayEquals(content, response.body());
+  }
+
+  @Test
+  void getMissingFileIsNotFound() throws Exception {
+    HttpResponse<byte[]> response = send(request(DIRECTORY + "/missing.jar").GET());
+
+    assertEquals(404, response.statusCode());
+  }
+
+  @Test
+  void rangeSendsPartialContent() throws Exception {
+    HttpResponse<byte[]> response = send(request(JAR).header("Range", "bytes=100-199").GET());
+
+    assertEquals(206, response.statusCode());
+    assertEquals("bytes 100-199/10000",
+        response.headers().firstValue("Content-Range").orElse(null));
+    assertArrayEquals(Arrays.copyOfRange(content, 100, 200), response.body());
+  }
+
+  @Test
+  void suffixRangeSendsEndOfFile() throws Exception {
+    HttpResponse<byte[]> response = send(request(JAR).header("Range", "bytes=-10").GET());
+
+    assertEquals(206, response.statusCode());
+    assertEquals("bytes 9990-9999/10000",
+        response.headers().firstValue("Content-Range").orElse(null));
+    assertArrayEquals(Arrays.copyOfRange(content, 9990, 10000), response.body());
+  }
+
+  @Test
+  void openRangeIsClampedToFileSize() throws Exception {
+    HttpResponse<byte[]> response = send(request(JAR).header("Range", "bytes=9000-20000").GET());
+
+    assertEquals(206, response.statusCode());
+    assertArrayEquals(Arrays.copyOfRange(content, 9000, 10000), response.body());
+  }
+
+  @Test
+  void unsatisfiableRangeIsRejected() throws Exception {
+    HttpResponse<byte[]> response = send(request(JAR).header("Range", "bytes=10000-").GET());
+
+    assertEquals(416, response.statusCode());
+    assertEquals("bytes */10000", response.headers().firstValue("Content-Range").orElse(null));
+  }
+
+  @Test
+  void multipleRangesSendMultipartBody() throws Exception {
+    HttpResponse<byte[]> response =
+        send(request(JAR).header("Range", "bytes=0-9,5000-5009").GET());
+    String contentType = response.headers().firstValue("Content-Type").orElse("");
+
+    assertEquals(206, response.statusCode());
+    assertTrue(contentType.startsWith("multipart/byteranges; boundary="), contentType);
+
+    String body = new String(response.body(), "ISO-8859-1");
+    assertTrue(body.contains("Content-Range: bytes 0-9/10000"), body);
+    assertTrue(body.contains("Content-Range: bytes 5000-5009/10000"), body);
+  }
+
+  @Test
+  void matchingEntityTagIsNotModified() throws Exception {
+    String etag = send(request(JAR).GET()).headers().firstValue("ETag").orElseThrow();
+    HttpResponse<byte[]> response = send(request(JAR).header("If-None-Match", etag).GET());
+
+    assertEquals(304, response.statusCode());
+    assertEquals(0, response.body().length);
+  }
+
+  @Test
+  void differentEntityTagSendsFile() throws Exception {
+    HttpResponse<byte[]> response =
+        send(request(JAR).header("If-None-Match", "\"other\"").GET());
+
+    assertEquals(200, response.statusCode());
+    assertArrayEquals(content, response.body());
+  }
+
+  @Test
+  void unchangedSinceLastModifiedIsNotModified() throws Exception {
+    String lastModified =
+        send(request(JAR).GET()).headers().firstValue("Last-Modified").orElseThrow();
+    HttpResponse<byte[]> response =
+        send(request(JAR).header("If-Modified-Since", lastModified).GET());
+
+    assertEquals(304, response.statusCode());
+  }
+
+  @Test
+  void staleIfRangeSendsWholeFile() throws Exception {
+    HttpResponse<byte[]> response = send(request(JAR)
+        .header("Range", "bytes=0-9")
+        .header("If-Range", "\"stale\"")
+        .GET());
+
+    assertEquals(200, response.statusCode());
+    assertArrayEquals(content, response.body());
+  }
+
+  @Test
+  void headDescribesFileWithoutBody() throws Exception {
+    HttpResponse<byte[]> response = send(head(JAR));
+
+    assertEquals(200, response.statusCode());
+    assertEquals("10000", response.headers().firstValue("Content-Length").orElse(null));
+    assertTrue(response.headers().firstValue("ETag").isPresent());
+    assertEquals(0, response.body().length);
+  }
+
+  @Test
+  void headOfMissingFileIsNotFound() throws Exception {
+    HttpResponse<byte[]> response = send(head(DIRECTORY + "/missing.jar"));
+
+    assertEquals(404, response.statusCode());
+  }
+
+  @Test
+  void headOfUncompressedVariantOmitsLength() throws Exception {
+    HttpResponse<byte[]> response = send(head(POM).header("Accept-Encoding", "gzip"));
+
+    assertEquals(200, response.statusCode());
+    assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+    assertEquals("Accept-Encoding", response.headers().firstValue("Vary").orElse(null));
+    assertFalse(response.headers().firstValue("Content-Length").isPresent());
+  }
+
+  @Test
+  void headOfCompressedVariantReportsCachedLength() throws Exception {
+    HttpResponse<byte[]> get = send(request(POM).header("Accept-Encoding", "gzip").GET());
+    HttpResponse<byte[]> head = send(head(POM).header("Accept-Encoding", "gzip"));
+
+    assertEquals("gzip", get.headers().firstValue("Content-Encoding").orElse(null));
+    assertEquals(String.valueOf(get.body().length),
+        head.headers().firstValue("Content-Length").orElse(null));
+    assertEquals(0, head.body().length);
+  }
+
+  /**
+   * Creates a HEAD request builder for a file in the test repository.
+   *
+   * @param path the path to the file.
+   * @return the request builder.
+   */
+  private HttpRequest.Builder head(String path) {
+    return request(path).method("HEAD", HttpRequest.BodyPublishers.noBody());
+  }
+
+  /**
+   * Creates a request builder for a file in the test repository.
+   *
+   * @param path the path to the file.
+   * @return the request builder.
+   */
+  private HttpRequest.Builder request(String path) {
+    return HttpRequest.newBuilder(base.resolve(path));
+  }
+
+  /**
+   * Sends a request and reads the response body.
+   *
+   * @param request the request builder.
+   * @return the response.
+   * @throws Exception if the request failed.
+   */
+  private HttpResponse<byte[]> send(HttpRequest.Builder request) throws Exception {
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+  }
+}
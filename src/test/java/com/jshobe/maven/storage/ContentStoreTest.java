@@ -0,0 +1,192 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import com.jshobe.maven.storage.ContentStore.MigrationResult;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the deduplicated layout of {@link LocalStorage} and {@link ContentStore}.
+ */
+class ContentStoreTest {
+
+  private static final String REPOSITORY = "releases";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void identicalFilesShareBlob() throws IOException {
+    try (LocalStorage storage = createStorage()) {
+      write(storage, "a/one.jar", "content");
+      write(storage, "b/two.jar", "content");
+
+      assertEquals(1, listBlobs().size());
+      assertEquals(3, getLinkCount(file("a/one.jar")));
+      assertEquals(Files.readAttributes(file("a/one.jar"), "unix:ino").get("ino"),
+          Files.readAttributes(file("b/two.jar"), "unix:ino").get("ino"));
+    }
+  }
+
+  @Test
+  void reusedBlobKeepsModificationTime() throws IOException {
+    try (LocalStorage storage = createStorage()) {
+      write(storage, "a/one.jar", "content");
+      FileTime old = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+      Files.setLastModifiedTime(file("a/one.jar"), old);
+
+      write(storage, "b/two.jar", "content");
+
+      assertEquals(old, Files.getLastModifiedTime(file("a/one.jar")));
+    }
+  }
+
+  @Test
+  void entityTagIdentifiesContent() throws IOException {
+    try (LocalStorage storage = createStorage()) {
+      write(storage, "a/one.jar", "first");
+      String first = storage.getFile(REPOSITORY, "a/one.jar").orElseThrow().getEtag();
+
+      write(storage, "a/one.jar", "other");
+      String other = storage.getFile(REPOSITORY, "a/one.jar").orElseThrow().getEtag();
+
+      write(storage, "b/two.jar", "first");
+      String copy = storage.getFile(REPOSITORY, "b/two.jar").orElseThrow().getEtag();
+
+      assertNotEquals(first, other);
+      assertEquals(first, copy);
+    }
+  }
+
+  @Test
+  void garbageCollectionRemovesUnlinkedBlobs() throws IOException {
+    try (LocalStorage storage = createStorage()) {
+      write(storage, "a/one.jar", "first");
+      write(storage, "a/one.jar", "second");
+    }
+
+    assertEquals(2, listBlobs().size());
+
+    try (ContentStore store = new ContentStore(directory)) {
+      assertEquals(5L, store.collectGarbage());
+    }
+
+    assertEquals(1, listBlobs().size());
+    assertEquals("second", Files.readString(file("a/one.jar")));
+  }
+
+  @Test
+  void migrationLinksIdenticalFiles() throws IOException {
+    try (LocalStorage storage = new LocalStorage(directory, Set.of(REPOSITORY))) {
+      write(storage, "a/one.jar", "content");
+      write(storage, "b/two.jar", "content");
+      write(storage, "c/three.jar", "different");
+    }
+
+    MigrationResult result;
+
+    try (ContentStore store = new ContentStore(directory)) {
+      result = store.migrate(directory.resolve(REPOSITORY));
+    }
+
+    assertEquals(new MigrationResult(3L, 1L, 7L), result);
+    assertEquals(2, listBlobs().size());
+    assertEquals(3, getLinkCount(file("b/two.jar")));
+    assertArrayEquals("content".getBytes(StandardCharsets.UTF_8),
+        Files.readAllBytes(file("b/two.jar")));
+  }
+
+  /**
+   * Creates storage that uses the deduplicated layout.
+   *
+   * @return the storage.
+   * @throws IOException if the storage could not be created.
+   */
+  private LocalStorage createStorage() throws IOException {
+    return new LocalStorage(directory, Set.of(REPOSITORY), LocalStorage.Durability.NONE, false,
+        true);
+  }
+
+  /**
+   * Writes a file, creating its directory.
+   *
+   * @param storage the storage.
+   * @param path    the path to the file.
+   * @param content the content of the file.
+   * @throws IOException if the file could not be written.
+   */
+  private static void write(Storage storage, String path, String content) throws IOException {
+    storage.createDirectory(REPOSITORY, path.substring(0, path.lastIndexOf('/')));
+    InputStream input = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    storage.writeFile(REPOSITORY, path, input);
+  }
+
+  /**
+   * Gets the location of a file in the file system.
+   *
+   * @param path the path to the file in the repository.
+   * @return the file path.
+   */
+  private Path file(String path) {
+    return directory.resolve(REPOSITORY).resolve(path);
+  }
+
+  /**
+   * Lists the blobs in the content store.
+   *
+   * @return the paths to the blobs.
+   * @throws IOException if the blob directory could not be read.
+   */
+  private List<Path> listBlobs() throws IOException {
+    try (Stream<Path> stream = Files.walk(directory.resolve(ContentStore.DIRECTORY))) {
+      return stream.filter(Files::isRegularFile)
+          .filter(path -> !path.getFileName().toString().startsWith("."))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Gets the number of hard links to a file.
+   *
+   * @param file the file.
+   * @return the link count.
+   * @throws IOException if the link count could not be read.
+   */
+  private static int getLinkCount(Path file) throws IOException {
+    return (Integer) Files.getAttribute(file, "unix:nlink");
+  }
+}
@@ -0,0 +1,259 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the admission and invalidation of {@link DiskCacheStorage} in front of a fake remote
+ * storage that reports the version of each read.
+ */
+class DiskCacheStorageTest {
+
+  private static final String REPOSITORY = "releases";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void fullReadIsServedFromDisk() throws IOException {
+    RemoteStorage remote = new RemoteStorage();
+    remote.put("a.jar", "first");
+
+    try (DiskCacheStorage storage = createStorage(remote, 1024L)) {
+      assertEquals("first", read(storage, "a.jar"));
+      assertTrue(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+      assertEquals("first", read(storage, "a.jar"));
+      assertEquals(1, remote.reads.get());
+    }
+  }
+
+  @Test
+  void partialReadIsNotCached() throws IOException {
+    RemoteStorage remote = new RemoteStorage();
+    remote.put("a.jar", "first");
+
+    try (DiskCacheStorage storage = createStorage(remote, 1024L)) {
+      try (InputStream input = storage.readFile(REPOSITORY, "a.jar")) {
+        assertEquals('f', input.read());
+      }
+
+      assertFalse(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+    }
+  }
+
+  @Test
+  void writeInvalidatesCopy() throws IOException {
+    RemoteStorage remote = new RemoteStorage();
+    remote.put("a.jar", "first");
+
+    try (DiskCacheStorage storage = createStorage(remote, 1024L)) {
+      read(storage, "a.jar");
+      storage.writeFile(REPOSITORY, "a.jar", stream("second"));
+
+      assertFalse(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+      assertEquals("second", read(storage, "a.jar"));
+    }
+  }
+
+  @Test
+  void fillRacingWriteIsDropped() throws IOException {
+    RemoteStorage remote = new RemoteStorage();
+    remote.put("a.jar", "first");
+
+    try (DiskCacheStorage storage = createStorage(remote, 1024L)) {
+      InputStream stale = storage.readFile(REPOSITORY, "a.jar");
+      storage.writeFile(REPOSITORY, "a.jar", stream("second"));
+
+      try (stale) {
+        assertEquals("first", new String(stale.readAllBytes(), StandardCharsets.UTF_8));
+      }
+
+      assertFalse(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+      assertEquals("second", read(storage, "a.jar"));
+    }
+  }
+
+  @Test
+  void changedRemoteVersionDiscardsCopy() throws IOException {
+    RemoteStorage remote = new RemoteStorage();
+    remote.put("a.jar", "first");
+
+    try (DiskCacheStorage storage = createStorage(remote, 1024L)) {
+      read(storage, "a.jar");
+      remote.put("a.jar", "second");
+      storage.getFile(REPOSITORY, "a.jar");
+
+      assertFalse(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+      assertEquals("second", read(storage, "a.jar"));
+    }
+  }
+
+  @Test
+  void frequentFileDisplacesLessFrequentOnes() throws IOException {
+    RemoteStorage remote = new RemoteStorage();
+    String content = "x".repeat(60);
+    remote.put("a.jar", content);
+    remote.put("b.jar", content);
+    remote.put("c.jar", content);
+
+    try (DiskCacheStorage storage = createStorage(remote, 100L)) {
+      for (int i = 0; i < 5; i++) {
+        read(storage, "a.jar");
+      }
+
+      read(storage, "b.jar");
+
+      assertTrue(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+      assertFalse(storage.getLocalPath(REPOSITORY, "b.jar").isPresent());
+
+      for (int i = 0; i < 10; i++) {
+        read(storage, "c.jar");
+      }
+
+      assertTrue(storage.getLocalPath(REPOSITORY, "c.jar").isPresent());
+      assertFalse(storage.getLocalPath(REPOSITORY, "a.jar").isPresent());
+    }
+  }
+
+  /**
+   * Creates the disk cache.
+   *
+   * @param remote   the remote storage.
+   * @param capacity the capacity of the cache in bytes.
+   * @return the storage.
+   * @throws IOException if the cache directory could not be created.
+   */
+  private DiskCacheStorage createStorage(Storage remote, long capacity) throws IOException {
+    return new DiskCacheStorage(
+        remote, directory.resolve("cache"), capacity, Duration.ofHours(1L));
+  }
+
+  /**
+   * Reads a whole file as a UTF-8 string.
+   *
+   * @param storage the storage.
+   * @param path    the path to the file.
+   * @return the content.
+   * @throws IOException if the file could not be read.
+   */
+  private static String read(Storage storage, String path) throws IOException {
+    try (InputStream input = storage.readFile(REPOSITORY, path)) {
+      return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Creates a stream of the UTF-8 encoding of a string.
+   *
+   * @param content the content of the stream.
+   * @return the input stream.
+   */
+  private static InputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * {@code RemoteStorage} keeps files in memory and gives every written file a new entity tag,
+   * which its streams report as the version that was read.
+   */
+  private static final class RemoteStorage implements Storage {
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, String> etags = new ConcurrentHashMap<>();
+    private final AtomicInteger versions = new AtomicInteger();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /**
+     * Stores a file without notifying the storage listeners, as if written by another server.
+     *
+     * @param path    the path to the file.
+     * @param content the content of the file.
+     */
+    void put(String path, String content) {
+      files.put(path, content.getBytes(StandardCharsets.UTF_8));
+      etags.put(path, "v" + versions.incrementAndGet());
+    }
+
+    @Override
+    public List<String> getRepositories() {
+      return List.of(REPOSITORY);
+    }
+
+    @Override
+    public List<StorageFile> listDirectory(String repository, String path) {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public boolean exists(String repository, String path) {
+      return files.containsKey(path);
+    }
+
+    @Override
+    public Optional<StorageFile> getFile(String repository, String path) {
+      byte[] content = files.get(path);
+
+      if (content == null) {
+        return Optional.empty();
+      }
+
+      StorageFile file = new StorageFile();
+      file.setRepository(repository);
+      file.setPath(path);
+      file.setSize(content.length);
+      file.setEtag(etags.get(path));
+      return Optional.of(file);
+    }
+
+    @Override
+    public InputStream readFile(String repository, String path) {
+      reads.incrementAndGet();
+      String etag = etags.get(path);
+      return new VersionedInputStream(new ByteArrayInputStream(files.get(path)), () -> etag);
+    }
+
+    @Override
+    public void writeFile(String repository, String path, InputStream input) throws IOException {
+      put(path, new String(input.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void createDirectory(String repository, String path) {
+    }
+  }
+}
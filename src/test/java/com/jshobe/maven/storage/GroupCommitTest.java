@@ -0,0 +1,110 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link GroupCommit}.
+ */
+class GroupCommitTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void concurrentSyncsComplete() throws Exception {
+    GroupCommit groupCommit = new GroupCommit();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      List<Future<?>> results = new ArrayList<>();
+
+      for (int i = 0; i < 64; i++) {
+        Path dir = Files.createDirectories(directory.resolve("dir" + (i % 4)));
+        results.add(executor.submit(() -> {
+          groupCommit.sync(dir);
+          return null;
+        }));
+      }
+
+      for (Future<?> result : results) {
+        result.get(10L, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+      groupCommit.close();
+    }
+  }
+
+  @Test
+  void syncAfterCloseFails() {
+    GroupCommit groupCommit = new GroupCommit();
+    groupCommit.close();
+
+    IOException e = assertThrows(IOException.class, () -> groupCommit.sync(directory));
+    assertEquals("Group commit is closed", e.getMessage());
+  }
+
+  @Test
+  void syncRacingCloseNeverHangs() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    try {
+      for (int i = 0; i < 20; i++) {
+        GroupCommit groupCommit = new GroupCommit();
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int j = 0; j < 4; j++) {
+          results.add(executor.submit(() -> {
+            try {
+              groupCommit.sync(directory);
+            } catch (IOException e) {
+              // expected once the group commit is closed
+            }
+
+            return null;
+          }));
+        }
+
+        groupCommit.close();
+
+        for (Future<?> result : results) {
+          result.get(10L, TimeUnit.SECONDS);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
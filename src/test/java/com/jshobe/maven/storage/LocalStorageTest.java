@@ -0,0 +1,144 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the atomic uploads of {@link LocalStorage}.
+ */
+class LocalStorageTest {
+
+  private static final String REPOSITORY = "releases";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void writeReplacesFileWithEveryDurability() throws IOException {
+    for (LocalStorage.Durability durability : LocalStorage.Durability.values()) {
+      Path root = directory.resolve(durability.name());
+
+      try (LocalStorage storage =
+          new LocalStorage(root, Set.of(REPOSITORY), durability, false, false)) {
+        storage.createDirectory(REPOSITORY, "a");
+        storage.writeFile(REPOSITORY, "a/file.txt", stream("first"));
+        storage.writeFile(REPOSITORY, "a/file.txt", stream("second"));
+
+        assertEquals("second", read(storage, "a/file.txt"));
+        assertEquals(List.of("file.txt"), list(root.resolve(REPOSITORY).resolve("a")));
+      }
+    }
+  }
+
+  @Test
+  void failedWriteKeepsPreviousFile() throws IOException {
+    try (LocalStorage storage = new LocalStorage(directory, Set.of(REPOSITORY))) {
+      storage.createDirectory(REPOSITORY, "a");
+      storage.writeFile(REPOSITORY, "a/file.txt", stream("first"));
+
+      InputStream failing = new InputStream() {
+        private int count;
+
+        @Override
+        public int read() throws IOException {
+          if (count++ == 100) {
+            throw new IOException("Connection reset");
+          }
+
+          return 'x';
+        }
+      };
+
+      assertThrows(IOException.class, () -> storage.writeFile(REPOSITORY, "a/file.txt", failing));
+      assertEquals("first", read(storage, "a/file.txt"));
+      assertEquals(List.of("file.txt"), list(directory.resolve(REPOSITORY).resolve("a")));
+    }
+  }
+
+  @Test
+  void temporaryFilesAreNotListed() throws IOException {
+    try (LocalStorage storage = new LocalStorage(directory, Set.of(REPOSITORY))) {
+      storage.createDirectory(REPOSITORY, "a");
+      storage.writeFile(REPOSITORY, "a/file.txt", stream("content"));
+      Files.writeString(
+          directory.resolve(REPOSITORY).resolve("a").resolve(LocalStorage.TEMP_PREFIX + "1"), "x");
+
+      List<String> paths = storage.listDirectory(REPOSITORY, "a").stream()
+          .map(StorageFile::getPath)
+          .collect(Collectors.toList());
+      assertEquals(List.of("a/file.txt"), paths);
+    }
+  }
+
+  /**
+   * Creates a stream of the UTF-8 encoding of a string.
+   *
+   * @param content the content of the stream.
+   * @return the input stream.
+   */
+  private static InputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads a file from storage as a UTF-8 string.
+   *
+   * @param storage the storage.
+   * @param path    the path to the file.
+   * @return the content of the file.
+   * @throws IOException if the file could not be read.
+   */
+  private static String read(Storage storage, String path) throws IOException {
+    try (InputStream input = storage.readFile(REPOSITORY, path)) {
+      return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Lists the names of the entries in a directory of the file system.
+   *
+   * @param dir the directory.
+   * @return the sorted names.
+   * @throws IOException if the directory could not be listed.
+   */
+  private static List<String> list(Path dir) throws IOException {
+    try (Stream<Path> stream = Files.list(dir)) {
+      return stream.map(path -> path.getFileName().toString())
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+}
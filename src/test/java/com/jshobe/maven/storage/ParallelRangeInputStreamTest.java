@@ -0,0 +1,158 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * Tests the reassembly of {@link ParallelRangeInputStream}.
+ */
+class ParallelRangeInputStreamTest {
+
+  private static final int PART_SIZE = 64;
+
+  private final byte[] content = createContent(1000);
+  private final AtomicBoolean aborted = new AtomicBoolean();
+  private final AtomicInteger opened = new AtomicInteger();
+
+  @Test
+  void partsAreReadInOrder() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    BufferPool buffers = new BufferPool(PART_SIZE, 8);
+
+    try (InputStream input = new ParallelRangeInputStream(
+        openFirst(), content.length, 4, buffers, new Reader(-1L), executor)) {
+      assertArrayEquals(content, input.readAllBytes());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertTrue(aborted.get());
+    assertEquals(0, opened.get());
+  }
+
+  @Test
+  void exhaustedPoolFallsBackToSingleRequest() throws IOException {
+    BufferPool buffers = new BufferPool(PART_SIZE, 1);
+
+    try (InputStream input = new ParallelRangeInputStream(
+        openFirst(), content.length, 4, buffers, new Reader(-1L), Runnable::run)) {
+      assertArrayEquals(content, input.readAllBytes());
+    }
+
+    assertEquals(1, opened.get());
+  }
+
+  @Test
+  void failedPartIsReported() throws IOException {
+    BufferPool buffers = new BufferPool(PART_SIZE, 8);
+
+    try (InputStream input = new ParallelRangeInputStream(
+        openFirst(), content.length, 4, buffers, new Reader(2L * PART_SIZE), Runnable::run)) {
+      assertThrows(IOException.class, input::readAllBytes);
+    }
+  }
+
+  @Test
+  void closeReturnsBuffers() throws IOException {
+    BufferPool buffers = new BufferPool(PART_SIZE, 4);
+
+    try (InputStream input = new ParallelRangeInputStream(
+        openFirst(), content.length, 4, buffers, new Reader(-1L), Runnable::run)) {
+      input.readNBytes(PART_SIZE + 1);
+    }
+
+    for (int i = 0; i < 4; i++) {
+      assertNotNull(buffers.tryAcquire(), "Buffer " + i + " was not returned");
+    }
+  }
+
+  /**
+   * Opens the response for the whole file.
+   *
+   * @return the response stream.
+   */
+  private ResponseInputStream<GetObjectResponse> openFirst() {
+    return new ResponseInputStream<>(GetObjectResponse.builder().build(),
+        AbortableInputStream.create(new ByteArrayInputStream(content), () -> aborted.set(true)));
+  }
+
+  /**
+   * Creates random file content.
+   *
+   * @param length the length of the content.
+   * @return the content.
+   */
+  private static byte[] createContent(int length) {
+    byte[] content = new byte[length];
+    new Random(length).nextBytes(content);
+    return content;
+  }
+
+  /**
+   * {@code Reader} reads ranges of the test content.
+   */
+  private final class Reader implements ParallelRangeInputStream.RangeReader {
+
+    private final long failingOffset;
+
+    /**
+     * Creates a new instance of {@code Reader}.
+     *
+     * @param failingOffset the offset of the range that fails to be read or {@code -1} if none.
+     */
+    Reader(long failingOffset) {
+      this.failingOffset = failingOffset;
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer buffer) throws IOException {
+      if (offset == failingOffset) {
+        throw new IOException("Range at " + offset + " failed");
+      }
+
+      buffer.put(content, (int) offset, buffer.remaining());
+    }
+
+    @Override
+    public InputStream open(long offset) {
+      opened.incrementAndGet();
+      return new ByteArrayInputStream(content, (int) offset, content.length - (int) offset);
+    }
+  }
+}
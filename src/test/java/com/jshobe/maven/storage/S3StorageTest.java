@@ -0,0 +1,218 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+/**
+ * Tests the uploads of {@link S3Storage} against an in-memory S3 client.
+ */
+class S3StorageTest {
+
+  private static final String REPOSITORY = "releases";
+  private static final String PATH = "com/example/demo/1.0/demo-1.0.jar";
+  private static final String KEY = REPOSITORY + "/" + PATH;
+
+  @Test
+  void smallFileIsPutInOneRequest() throws IOException {
+    FakeS3 s3 = new FakeS3();
+    byte[] content = createContent(1000);
+
+    try (S3Storage storage = createStorage(s3)) {
+      storage.writeFile(REPOSITORY, PATH, new ByteArrayInputStream(content));
+    }
+
+    assertArrayEquals(content, s3.objects.get(KEY));
+    assertTrue(s3.parts.isEmpty());
+  }
+
+  @Test
+  void largeFileIsUploadedInParts() throws IOException {
+    FakeS3 s3 = new FakeS3();
+    byte[] content = createContent(2 * S3Storage.MIN_PART_SIZE + 123);
+
+    try (S3Storage storage = createStorage(s3)) {
+      storage.writeFile(REPOSITORY, PATH, new ByteArrayInputStream(content));
+    }
+
+    assertNull(s3.objects.get(KEY));
+    assertEquals(List.of(1, 2, 3), s3.completed.stream()
+        .map(CompletedPart::partNumber)
+        .collect(Collectors.toList()));
+    assertEquals(List.of("etag-1", "etag-2", "etag-3"), s3.completed.stream()
+        .map(CompletedPart::eTag)
+        .collect(Collectors.toList()));
+    assertEquals(123, s3.parts.get(3).length);
+    assertArrayEquals(content, s3.assemble());
+    assertFalse(s3.aborted);
+  }
+
+  @Test
+  void failedPartAbortsUpload() throws IOException {
+    FakeS3 s3 = new FakeS3();
+    s3.failingPart = 2;
+    byte[] content = createContent(3 * S3Storage.MIN_PART_SIZE);
+
+    try (S3Storage storage = createStorage(s3)) {
+      assertThrows(SdkClientException.class,
+          () -> storage.writeFile(REPOSITORY, PATH, new ByteArrayInputStream(content)));
+      assertTrue(s3.aborted);
+      assertNull(s3.completed);
+
+      // the buffers of the failed upload are returned to the pool
+      s3.failingPart = 0;
+      s3.parts.clear();
+      storage.writeFile(REPOSITORY, PATH, new ByteArrayInputStream(content));
+      assertArrayEquals(content, s3.assemble());
+    }
+  }
+
+  /**
+   * Creates storage with the smallest part size, two parts in flight and three buffers.
+   *
+   * @param s3 the fake S3 service.
+   * @return the storage.
+   */
+  private static S3Storage createStorage(FakeS3 s3) {
+    S3Client client = (S3Client) Proxy.newProxyInstance(
+        S3Client.class.getClassLoader(), new Class<?>[] {S3Client.class}, s3);
+    return new S3Storage(client, "bucket", Set.of(REPOSITORY), S3Storage.MIN_PART_SIZE, 2, 3,
+        Long.MAX_VALUE, S3Storage.MIN_PART_SIZE, 1, 1);
+  }
+
+  /**
+   * Creates random file content.
+   *
+   * @param length the length of the content.
+   * @return the content.
+   */
+  private static byte[] createContent(int length) {
+    byte[] content = new byte[length];
+    new Random(length).nextBytes(content);
+    return content;
+  }
+
+  /**
+   * Reads the content of a request body.
+   *
+   * @param body the request body.
+   * @return the content.
+   * @throws IOException if the body could not be read.
+   */
+  private static byte[] read(RequestBody body) throws IOException {
+    try (InputStream input = body.contentStreamProvider().newStream()) {
+      return input.readAllBytes();
+    }
+  }
+
+  /**
+   * {@code FakeS3} implements the S3 operations used for uploads in memory.
+   */
+  private static final class FakeS3 implements InvocationHandler {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+    private volatile List<CompletedPart> completed;
+    private volatile boolean aborted;
+    private volatile int failingPart;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "listObjectsV2":
+          return ListObjectsV2Response.builder().build();
+        case "putObject":
+          objects.put(((PutObjectRequest) args[0]).key(), read((RequestBody) args[1]));
+          return PutObjectResponse.builder().build();
+        case "createMultipartUpload":
+          return CreateMultipartUploadResponse.builder().uploadId("upload").build();
+        case "uploadPart":
+          int number = ((UploadPartRequest) args[0]).partNumber();
+
+          if (number == failingPart) {
+            throw SdkClientException.create("Part " + number + " failed");
+          }
+
+          parts.put(number, read((RequestBody) args[1]));
+          return UploadPartResponse.builder().eTag("etag-" + number).build();
+        case "completeMultipartUpload":
+          completed = ((CompleteMultipartUploadRequest) args[0]).multipartUpload().parts();
+          return CompleteMultipartUploadResponse.builder().build();
+        case "abortMultipartUpload":
+          aborted = true;
+          return AbortMultipartUploadResponse.builder().build();
+        case "close":
+          return null;
+        case "serviceName":
+          return "s3";
+        default:
+          throw new UnsupportedOperationException(method.getName());
+      }
+    }
+
+    /**
+     * Concatenates the uploaded parts in the order of their numbers.
+     *
+     * @return the content of the multipart upload.
+     */
+    byte[] assemble() {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+      for (int i = 1; i <= parts.size(); i++) {
+        output.writeBytes(parts.get(i));
+      }
+
+      return output.toByteArray();
+    }
+  }
+}
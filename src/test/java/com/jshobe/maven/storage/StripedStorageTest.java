@@ -0,0 +1,196 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests the placement and rebalancing of {@link StripedStorage}.
+ */
+class StripedStorageTest {
+
+  private static final String REPOSITORY = "releases";
+  private static final String GROUP = "com/example";
+  private static final int ARTIFACTS = 30;
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void everyFileIsStoredOnOneVolume() throws IOException {
+    List<Path> roots = volumes(3);
+
+    try (StripedStorage storage = createStorage(roots)) {
+      writeArtifacts(storage);
+      assertArtifacts(storage, roots);
+    }
+
+    Set<Path> used = new HashSet<>();
+
+    for (int i = 0; i < ARTIFACTS; i++) {
+      used.add(findVolume(roots, getPath(i)));
+    }
+
+    assertTrue(used.size() > 1, "All files were placed on " + used);
+  }
+
+  @Test
+  void rebalanceMovesFilesToAddedVolume() throws IOException {
+    List<Path> roots = volumes(2);
+
+    try (StripedStorage storage = createStorage(roots.subList(0, 1))) {
+      writeArtifacts(storage);
+    }
+
+    try (StripedStorage storage = createStorage(roots)) {
+      long moved = storage.rebalance();
+      long onAdded = 0L;
+
+      for (int i = 0; i < ARTIFACTS; i++) {
+        if (findVolume(roots, getPath(i)).equals(roots.get(1))) {
+          onAdded++;
+        }
+      }
+
+      assertTrue(moved > 0L, "No files were moved");
+      assertEquals(onAdded, moved);
+      assertArtifacts(storage, roots);
+      assertEquals(0L, storage.rebalance());
+    }
+  }
+
+  /**
+   * Creates striped storage.
+   *
+   * @param roots the volume directories.
+   * @return the storage.
+   * @throws IOException if the storage could not be created.
+   */
+  private static StripedStorage createStorage(List<Path> roots) throws IOException {
+    return new StripedStorage(roots, Set.of(REPOSITORY), LocalStorage.Durability.NONE, false,
+        false);
+  }
+
+  /**
+   * Gets the paths to a number of volume directories.
+   *
+   * @param count the number of volumes.
+   * @return the volume directories.
+   */
+  private List<Path> volumes(int count) {
+    return IntStream.range(0, count)
+        .mapToObj(i -> directory.resolve("volume" + i))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Writes the test artifacts, each in its own directory.
+   *
+   * @param storage the storage.
+   * @throws IOException if a file could not be written.
+   */
+  private static void writeArtifacts(Storage storage) throws IOException {
+    for (int i = 0; i < ARTIFACTS; i++) {
+      String path = getPath(i);
+      storage.createDirectory(REPOSITORY, path.substring(0, path.lastIndexOf('/')));
+      storage.writeFile(REPOSITORY, path,
+          new ByteArrayInputStream(getContent(i).getBytes(StandardCharsets.UTF_8)));
+    }
+  }
+
+  /**
+   * Checks that every artifact can be read, is stored on exactly one volume, and that the
+   * directories of all artifacts are listed.
+   *
+   * @param storage the storage.
+   * @param roots   the volume directories.
+   * @throws IOException if a file could not be read.
+   */
+  private static void assertArtifacts(Storage storage, List<Path> roots) throws IOException {
+    for (int i = 0; i < ARTIFACTS; i++) {
+      String path = getPath(i);
+
+      try (InputStream input = storage.readFile(REPOSITORY, path)) {
+        assertEquals(getContent(i), new String(input.readAllBytes(), StandardCharsets.UTF_8));
+      }
+
+      findVolume(roots, path);
+    }
+
+    Set<String> listed = storage.listDirectory(REPOSITORY, GROUP).stream()
+        .filter(StorageFile::isDirectory)
+        .map(StorageFile::getPath)
+        .collect(Collectors.toSet());
+
+    for (int i = 0; i < ARTIFACTS; i++) {
+      assertTrue(listed.contains(GROUP + "/lib" + i), "lib" + i + " is not listed");
+    }
+  }
+
+  /**
+   * Finds the volume that stores a file, checking that it is stored on only one.
+   *
+   * @param roots the volume directories.
+   * @param path  the path to the file.
+   * @return the volume directory.
+   */
+  private static Path findVolume(List<Path> roots, String path) {
+    List<Path> found = roots.stream()
+        .filter(root -> Files.isRegularFile(root.resolve(REPOSITORY).resolve(path)))
+        .collect(Collectors.toList());
+    assertEquals(1, found.size(), path + " is stored on " + found);
+    return found.get(0);
+  }
+
+  /**
+   * Gets the path to a test artifact.
+   *
+   * @param index the index of the artifact.
+   * @return the path.
+   */
+  private static String getPath(int index) {
+    return GROUP + "/lib" + index + "/1.0/lib" + index + "-1.0.jar";
+  }
+
+  /**
+   * Gets the content of a test artifact.
+   *
+   * @param index the index of the artifact.
+   * @return the content.
+   */
+  private static String getContent(int index) {
+    return "artifact " + index;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of Simple Maven Server.
+ * Copyright (C) 2021  Jason Shobe
+ *
+ * Simple Maven Server is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Simple Maven Server is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Simple Maven Server.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.jshobe.maven.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link WriteLocks}.
+ */
+class WriteLocksTest {
+
+  @Test
+  void sameKeyIsExclusive() {
+    WriteLocks locks = new WriteLocks();
+    WriteLocks.Handle first = locks.lock("releases/a.jar");
+    CompletableFuture<WriteLocks.Handle> second = locks.lockAsync("releases/a.jar");
+
+    assertFalse(second.isDone());
+    first.close();
+    assertTrue(second.isDone());
+    second.join().close();
+  }
+
+  @Test
+  void differentKeysDoNotContend() {
+    WriteLocks locks = new WriteLocks();
+
+    try (WriteLocks.Handle ignored = locks.lock("releases/a.jar")) {
+      CompletableFuture<WriteLocks.Handle> other = locks.lockAsync("releases/b.jar");
+      assertTrue(other.isDone());
+      other.join().close();
+    }
+  }
+
+  @Test
+  void handleMayBeClosedByAnotherThread() throws Exception {
+    WriteLocks locks = new WriteLocks();
+    WriteLocks.Handle handle = locks.lock("releases/a.jar");
+    CompletableFuture<WriteLocks.Handle> waiting = locks.lockAsync("releases/a.jar");
+
+    CompletableFuture.runAsync(handle::close).get(10L, TimeUnit.SECONDS);
+
+    waiting.get(10L, TimeUnit.SECONDS).close();
+  }
+
+  @Test
+  void overlappingKeySetsDoNotDeadlock() throws Exception {
+    WriteLocks locks = new WriteLocks();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    AtomicInteger inside = new AtomicInteger();
+    AtomicInteger maxInside = new AtomicInteger();
+
+    try {
+      List<Future<?>> results = new ArrayList<>();
+
+      for (int i = 0; i < 200; i++) {
+        String[] keys = i % 2 == 0 ?
+            new String[] {"releases/a", "releases/b"} : new String[] {"releases/b", "releases/a"};
+        results.add(executor.submit(() -> {
+          try (WriteLocks.Handle ignored = locks.lock(keys)) {
+            maxInside.accumulateAndGet(inside.incrementAndGet(), Math::max);
+            Thread.yield();
+            inside.decrementAndGet();
+          }
+        }));
+      }
+
+      for (Future<?> result : results) {
+        result.get(10L, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, maxInside.get());
+  }
+}